@@ -0,0 +1,65 @@
+package com.remyoukaour.spectrogram;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ColumnBenchmark {
+	private static final int COLUMNS = 64;
+	
+	@Param({"512", "2048"})
+	public int bins;
+	
+	private Palette palette;
+	private double[] spectrum;
+	private BufferedImage image;
+	private int[] pixels;
+	
+	@Setup
+	public void setUp() {
+		palette = new Palette(bins);
+		spectrum = new double[bins];
+		double[] frame = new double[bins * 2];
+		System.arraycopy(Fixtures.noise(), 0, frame, 0, frame.length);
+		Spectrum.compute(frame, false, spectrum);
+		image = new BufferedImage(COLUMNS, bins, BufferedImage.TYPE_INT_RGB);
+		pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+	}
+	
+	// one Java2D call per bin, as columns used to be painted
+	@Benchmark
+	@OperationsPerInvocation(COLUMNS)
+	public BufferedImage fillRect() {
+		Graphics2D g = image.createGraphics();
+		try {
+			for (int x = 0; x < COLUMNS; x++) {
+				for (int j = 0; j < bins; j++) {
+					g.setColor(new Color(palette.powerColor(spectrum[bins - j - 1])));
+					g.fillRect(x, j, 1, 1);
+				}
+			}
+		}
+		finally {
+			g.dispose();
+		}
+		return image;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(COLUMNS)
+	public int[] raster() {
+		for (int x = 0; x < COLUMNS; x++) {
+			palette.paintColumn(spectrum, null, false, pixels, x, 1, COLUMNS);
+		}
+		return pixels;
+	}
+}
@@ -0,0 +1,45 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+	private static final int BLOCK = 4096;
+	
+	private final double[] buffer = new double[BLOCK];
+	private File wav;
+	
+	@Setup
+	public void setUp() throws Exception {
+		wav = Fixtures.wav();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		wav.delete();
+	}
+	
+	// per decoded sample, so the score reads as loading throughput
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.FRAMES)
+	public double wav() throws Exception {
+		SignalIterator iter = new SignalIterator(wav);
+		try {
+			double sum = 0.0;
+			while (iter.read(buffer, 0, BLOCK) > 0) {
+				sum += buffer[0];
+			}
+			return sum;
+		}
+		finally {
+			iter.close();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import javax.sound.sampled.*;
+
+public class Fixtures {
+	public static final int HERTZ = 44100;
+	public static final int CHANNELS = 2;
+	public static final int SECONDS = 30;
+	public static final int FRAMES = HERTZ * SECONDS;
+	
+	private Fixtures() {}
+	
+	public static double[] noise() {
+		Random random = new Random(1);
+		double[] noise = new double[FRAMES];
+		for (int i = 0; i < FRAMES; i++) {
+			noise[i] = (random.nextInt(65536) - 32768) / 32768.0;
+		}
+		return noise;
+	}
+	
+	public static Signal signal() {
+		return new Signal("benchmark", new SampledMemoryData(noise()), HERTZ);
+	}
+	
+	public static File wav() throws IOException {
+		byte[] bytes = new byte[FRAMES * CHANNELS * 2];
+		new Random(1).nextBytes(bytes);
+		AudioFormat format = new AudioFormat(HERTZ, 16, CHANNELS, true, false);
+		File wav = File.createTempFile("benchmark", ".wav");
+		wav.deleteOnExit();
+		AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(bytes),
+				format, FRAMES), AudioFileFormat.Type.WAVE, wav);
+		return wav;
+	}
+	
+	public static File pcm(double[] noise) throws IOException {
+		File pcm = File.createTempFile("benchmark", ".pcm");
+		pcm.deleteOnExit();
+		ByteBuffer encoded = ByteBuffer.allocate(noise.length * SampleFormat.SHORT.getWidth());
+		SampleFormat.SHORT.encode(noise, 0, noise.length, encoded, 0);
+		FileOutputStream out = new FileOutputStream(pcm);
+		try {
+			out.write(encoded.array());
+		}
+		finally {
+			out.close();
+		}
+		return pcm;
+	}
+}
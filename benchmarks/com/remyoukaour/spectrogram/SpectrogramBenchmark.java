@@ -0,0 +1,89 @@
+package com.remyoukaour.spectrogram;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SpectrogramBenchmark {
+	private static final int WIDTH = 1024;
+	private static final int TILES = 16;
+	
+	private Signal signal;
+	private Spectrogram spectrogram;
+	private BufferedImage canvas;
+	private File image;
+	private int index = 0;
+	
+	@Setup
+	public void setUp() throws Exception {
+		signal = Fixtures.signal();
+		spectrogram = new Spectrogram(2048, 0.5, WindowFunction.HAMMING,
+				false, true, false);
+		spectrogram.setSignal(signal);
+		spectrogram.zoomTo(64);
+		spectrogram.setSize(WIDTH, spectrogram.getBins());
+		canvas = new BufferedImage(WIDTH, spectrogram.getBins(),
+				BufferedImage.TYPE_INT_RGB);
+		image = File.createTempFile("benchmark", ".png");
+		paintUntilRendered();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		image.delete();
+	}
+	
+	@Benchmark
+	public BufferedImage tile() {
+		TileKey key = new TileKey(spectrogram.getBins(),
+				spectrogram.getOverlap(), spectrogram.getWindow(),
+				false, false, spectrogram.getZoom(), index++ % TILES);
+		return Spectrogram.renderTile(signal, key);
+	}
+	
+	// a full-height view whose tiles are all cached, as when scrolling back
+	@Benchmark
+	public int paintWarm() {
+		return paint();
+	}
+	
+	@Benchmark
+	public int paintCold() throws InterruptedException {
+		// a new signal drops every cached tile
+		spectrogram.setSignal(signal);
+		return paintUntilRendered();
+	}
+	
+	@Benchmark
+	public int save() throws Exception {
+		return spectrogram.save(image, "png");
+	}
+	
+	private int paint() {
+		Graphics2D g = canvas.createGraphics();
+		try {
+			g.setClip(0, 0, canvas.getWidth(), canvas.getHeight());
+			spectrogram.paintComponent(g);
+		}
+		finally {
+			g.dispose();
+		}
+		return canvas.getRGB(WIDTH / 2, 0);
+	}
+	
+	private int paintUntilRendered() throws InterruptedException {
+		paint();
+		while (spectrogram.isRendering()) {
+			Thread.sleep(1);
+		}
+		return paint();
+	}
+}
@@ -0,0 +1,33 @@
+package com.remyoukaour.spectrogram;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpectrumBenchmark {
+	// the same sizes as SignalWindow.BINS_VALUES
+	@Param({"32", "64", "128", "256", "512", "1024", "2048", "4096", "8000",
+			"8192", "11025", "16384", "22050", "32768", "44100"})
+	public int bins;
+	
+	private double[] noise, frame, out;
+	
+	@Setup
+	public void setUp() {
+		noise = Fixtures.noise();
+		frame = new double[bins * 2];
+		out = new double[bins];
+	}
+	
+	@Benchmark
+	public double[] compute() {
+		System.arraycopy(noise, 0, frame, 0, frame.length);
+		Spectrum.compute(frame, false, out);
+		return out;
+	}
+}
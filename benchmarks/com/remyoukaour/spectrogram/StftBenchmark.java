@@ -0,0 +1,47 @@
+package com.remyoukaour.spectrogram;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StftBenchmark {
+	private static final int COLUMNS = 256;
+	
+	@Param({"64", "2048"})
+	public int bins;
+	
+	@Param({"RECTANGULAR", "HAMMING"})
+	public WindowFunction window;
+	
+	private Signal signal;
+	private double[] out;
+	private int hop;
+	private long start = 0;
+	
+	@Setup
+	public void setUp() {
+		signal = Fixtures.signal();
+		out = new double[bins];
+		// the finest overlap, where consecutive frames share the most
+		hop = Math.max(1, bins / 32);
+	}
+	
+	// per spectrum, over consecutive columns as a tile reads them
+	@Benchmark
+	@OperationsPerInvocation(COLUMNS)
+	public double[] sliding() {
+		SlidingSpectrum spectra = new SlidingSpectrum(signal, Signal.MIX,
+				bins, window, false, hop);
+		long limit = Fixtures.FRAMES - (long)COLUMNS * hop;
+		start = start < limit ? start + COLUMNS * hop : 0;
+		for (int c = 0; c < COLUMNS; c++) {
+			spectra.read(start + (long)c * hop, out);
+		}
+		return out;
+	}
+}
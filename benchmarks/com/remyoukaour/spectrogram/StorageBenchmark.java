@@ -0,0 +1,81 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+	private static final int BLOCK = 4096;
+	private static final int RANDOM_READS = 1024;
+	
+	@Param({"memory", "short", "float", "disk", "mapped"})
+	public String store;
+	
+	private final double[] buffer = new double[BLOCK];
+	private final int[] indices = new int[1 << 16];
+	private File pcm;
+	private SampledData data;
+	private long position = 0;
+	private int next = 0;
+	
+	@Setup
+	public void setUp() throws Exception {
+		double[] noise = Fixtures.noise();
+		int n = noise.length;
+		pcm = Fixtures.pcm(noise);
+		if (store.equals("disk")) {
+			data = new SampledDiskData(new RandomAccessFile(pcm, "r"), n,
+					SampleFormat.SHORT);
+		}
+		else if (store.equals("mapped")) {
+			RandomAccessFile raf = new RandomAccessFile(pcm, "r");
+			data = new SampledMappedData(raf.getChannel(), n, SampleFormat.SHORT);
+			raf.close();
+		}
+		else if (store.equals("memory")) {
+			data = new SampledMemoryData(noise);
+		}
+		else {
+			WritableSampledData samples = store.equals("short") ?
+					SampleFormat.SHORT.allocate(n) : SampleFormat.FLOAT.allocate(n);
+			samples.set(0, noise, 0, n);
+			data = samples;
+		}
+		Random random = new Random(2);
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = random.nextInt(n);
+		}
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		data.close();
+		pcm.delete();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BLOCK)
+	public double sequential() {
+		data.read(position, BLOCK, buffer, 0);
+		position = (position + BLOCK) % data.size();
+		return buffer[0];
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(RANDOM_READS)
+	public double random() {
+		double sum = 0.0;
+		for (int i = 0; i < RANDOM_READS; i++) {
+			sum += data.get(indices[next++ & (indices.length - 1)]);
+		}
+		return sum;
+	}
+}
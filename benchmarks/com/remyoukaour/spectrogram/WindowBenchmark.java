@@ -0,0 +1,50 @@
+package com.remyoukaour.spectrogram;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowBenchmark {
+	// every constant is measured when no values are given
+	@Param
+	public WindowFunction window;
+	
+	@Param({"4096"})
+	public int size;
+	
+	private double[] src, dst, scratch;
+	
+	@Setup
+	public void setUp() {
+		src = new double[size];
+		dst = new double[size];
+		scratch = new double[size];
+		Random random = new Random(1);
+		for (int i = 0; i < size; i++) {
+			src[i] = random.nextDouble() * 2 - 1;
+		}
+	}
+	
+	@Benchmark
+	public double[] table() {
+		window.window(src, 0, dst);
+		return dst;
+	}
+	
+	// the formula evaluated for every sample on every call, as before the
+	// tables were cached
+	@Benchmark
+	public double[] perCall() {
+		window.fill(scratch);
+		for (int i = 0; i < size; i++) {
+			dst[i] = src[i] * scratch[i];
+		}
+		return dst;
+	}
+}
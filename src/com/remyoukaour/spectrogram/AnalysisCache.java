@@ -0,0 +1,315 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+public class AnalysisCache {
+	public static final long DEFAULT_CAPACITY = (long)8 << 30;
+	private static final int MAGIC = 0x53504743;
+	private static final int VERSION = 5;
+	// MP3s read in disk mode are decoded on demand, so only their frame
+	// index is stored in place of samples
+	private static final String INDEX_FORMAT = "MP3";
+	private static final String SAMPLES_EXTENSION = ".pcm";
+	private static final String SUMMARY_EXTENSION = ".sum";
+	private static final String PENDING_PREFIX = "pending_";
+	private static final long ABANDONED_MILLIS = 24L * 60 * 60 * 1000;
+	private static final int BUFFERED_DOUBLES = 1 << 16;
+	
+	private static AnalysisCache defaultCache = null;
+	
+	private final File dir;
+	private final long capacity;
+	
+	public static synchronized AnalysisCache getDefault() {
+		if (defaultCache == null) {
+			String path = System.getProperty("spectrogram.cache");
+			File dir = path != null ? new File(path) : new File(new File(
+					System.getProperty("user.home"), ".spectrogram"), "cache");
+			long capacity = Long.getLong("spectrogram.cache.size", DEFAULT_CAPACITY);
+			defaultCache = new AnalysisCache(dir, capacity);
+		}
+		return defaultCache;
+	}
+	
+	public AnalysisCache(File dir, long capacity) {
+		this.dir = dir;
+		this.capacity = capacity;
+	}
+	
+	public File getDirectory() {
+		return dir;
+	}
+	
+	public String getKey(File f) throws IOException {
+		String identity = f.getCanonicalPath() + '\0' + f.length() + '\0' +
+				f.lastModified();
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(identity.getBytes("UTF-8"));
+			StringBuilder key = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				key.append(Character.forDigit((b >> 4) & 0xF, 16));
+				key.append(Character.forDigit(b & 0xF, 16));
+			}
+			return key.toString();
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IOException(ex);
+		}
+	}
+	
+	private File getSamplesFile(String key) {
+		return new File(dir, key + SAMPLES_EXTENSION);
+	}
+	
+	private File getSummaryFile(String key) {
+		return new File(dir, key + SUMMARY_EXTENSION);
+	}
+	
+	public Signal open(String key, File f, StorageMode storage) throws IOException {
+		File samples = getSamplesFile(key);
+		File summaryFile = getSummaryFile(key);
+		if (!summaryFile.isFile())
+			return null;
+		int hertz, channels;
+		SampleFormat format = null;
+		Mp3Index index = null;
+		WaveformSummary summary;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(summaryFile)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return discard(key);
+			hertz = in.readInt();
+			channels = in.readInt();
+			String name = in.readUTF();
+			if (name.equals(INDEX_FORMAT))
+				index = Mp3Index.read(in);
+			else
+				format = SampleFormat.valueOf(name);
+			summary = WaveformSummary.read(in);
+		}
+		catch (IOException ex) {
+			return discard(key);
+		}
+		catch (IllegalArgumentException ex) {
+			return discard(key);
+		}
+		finally {
+			in.close();
+		}
+		long length = summary.size();
+		if (index != null) {
+			if (channels != index.getChannels() || length != index.getLength())
+				return discard(key);
+			// other modes store samples, and replace this entry when they do
+			if (storage != StorageMode.DISK)
+				return null;
+		}
+		else if (channels < 1 || !samples.isFile() ||
+				samples.length() != length * format.getWidth() * channels) {
+			return discard(key);
+		}
+		// the summary's timestamp orders entries for eviction
+		summaryFile.setLastModified(System.currentTimeMillis());
+		SampledData[] data;
+		if (index != null) {
+			data = SampledMp3Data.open(f, index);
+		}
+		else {
+			data = new SampledData[channels];
+			for (int c = 0; c < channels; c++) {
+				data[c] = openSamples(samples, c * length * format.getWidth(), length,
+						format, storage);
+			}
+		}
+		return new Signal(f.getName(), data, summary, hertz, null);
+	}
+	
+	private Signal discard(String key) {
+		getSummaryFile(key).delete();
+		getSamplesFile(key).delete();
+		return null;
+	}
+	
+	private static SampledData openSamples(File f, long offset, long length,
+			SampleFormat format, StorageMode storage) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		if (storage == StorageMode.DISK)
+			return new SampledDiskData(raf, offset, length, format);
+		try {
+			if (storage == StorageMode.MAPPED)
+				return new SampledMappedData(raf.getChannel(), offset, length, format);
+			WritableSampledData samples = format.allocate(length);
+			FileChannel channel = raf.getChannel();
+			channel.position(offset);
+			ByteBuffer bytes = ByteBuffer.allocate(format.getWidth() * BUFFERED_DOUBLES);
+			double[] buffer = new double[BUFFERED_DOUBLES];
+			for (long i = 0; i < length; ) {
+				int n = (int)Math.min(BUFFERED_DOUBLES, length - i);
+				bytes.clear();
+				bytes.limit(n * format.getWidth());
+				while (bytes.hasRemaining()) {
+					if (channel.read(bytes) < 0)
+						throw new EOFException();
+				}
+				format.decode(bytes, 0, buffer, 0, n);
+				samples.set(i, buffer, 0, n);
+				i += n;
+			}
+			return samples;
+		}
+		finally {
+			raf.close();
+		}
+	}
+	
+	public File createPending(String key) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("cannot create " + dir);
+		File f = File.createTempFile(PENDING_PREFIX + key, null, dir);
+		f.deleteOnExit();
+		return f;
+	}
+	
+	public void store(String key, SampledData[] samples, SampleFormat format, int hertz,
+			WaveformSummary summary) throws IOException {
+		File pending = createPending(key);
+		try {
+			FileChannel channel = new FileOutputStream(pending).getChannel();
+			try {
+				ByteBuffer bytes = ByteBuffer.allocate(format.getWidth() * BUFFERED_DOUBLES);
+				double[] buffer = new double[BUFFERED_DOUBLES];
+				for (SampledData data : samples) {
+					long length = data.size();
+					for (long i = 0; i < length; ) {
+						int n = (int)Math.min(BUFFERED_DOUBLES, length - i);
+						data.read(i, n, buffer, 0);
+						bytes.clear();
+						format.encode(buffer, 0, n, bytes, 0);
+						bytes.limit(n * format.getWidth());
+						while (bytes.hasRemaining()) {
+							channel.write(bytes);
+						}
+						i += n;
+					}
+				}
+			}
+			finally {
+				channel.close();
+			}
+			store(key, pending, format, samples.length, hertz, summary);
+		}
+		finally {
+			pending.delete();
+		}
+	}
+	
+	public void store(String key, File samples, SampleFormat format, int channels,
+			int hertz, WaveformSummary summary) throws IOException {
+		File pending = writeSummary(key, format.name(), null, channels, hertz, summary);
+		try {
+			// an entry only counts once its summary exists, so the samples
+			// go into place first
+			if (!samples.renameTo(getSamplesFile(key)) ||
+					!pending.renameTo(getSummaryFile(key)))
+				throw new IOException("cannot store " + key);
+		}
+		finally {
+			pending.delete();
+		}
+		evict();
+	}
+	
+	public void store(String key, Mp3Index index, WaveformSummary summary)
+			throws IOException {
+		File pending = writeSummary(key, INDEX_FORMAT, index, index.getChannels(),
+				index.getHertz(), summary);
+		try {
+			if (!pending.renameTo(getSummaryFile(key)))
+				throw new IOException("cannot store " + key);
+		}
+		finally {
+			pending.delete();
+		}
+		evict();
+	}
+	
+	private File writeSummary(String key, String format, Mp3Index index, int channels,
+			int hertz, WaveformSummary summary) throws IOException {
+		File pending = createPending(key);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(pending)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(hertz);
+				out.writeInt(channels);
+				out.writeUTF(format);
+				if (index != null)
+					index.write(out);
+				summary.write(out);
+			}
+			finally {
+				out.close();
+			}
+			return pending;
+		}
+		catch (IOException ex) {
+			pending.delete();
+			throw ex;
+		}
+	}
+	
+	public synchronized void evict() {
+		File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		long now = System.currentTimeMillis();
+		long total = 0;
+		final Map<File, Long> used = new HashMap<File, Long>();
+		for (File f : files) {
+			String name = f.getName();
+			long modified = f.lastModified();
+			if (name.startsWith(PENDING_PREFIX) || (name.endsWith(SAMPLES_EXTENSION) &&
+					!new File(dir, swapExtension(name)).exists())) {
+				// left behind by a session that never finished storing it
+				if (now - modified > ABANDONED_MILLIS)
+					f.delete();
+				continue;
+			}
+			total += f.length();
+			if (name.endsWith(SUMMARY_EXTENSION))
+				used.put(f, modified);
+		}
+		List<File> entries = new ArrayList<File>(used.keySet());
+		Collections.sort(entries, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long ta = used.get(a), tb = used.get(b);
+				return ta < tb ? -1 : ta > tb ? 1 : 0;
+			}
+		});
+		for (File summary : entries) {
+			if (total <= capacity)
+				break;
+			File samples = new File(dir, swapExtension(summary.getName()));
+			total -= summary.length() + samples.length();
+			summary.delete();
+			samples.delete();
+		}
+	}
+	
+	private static String swapExtension(String name) {
+		if (name.endsWith(SUMMARY_EXTENSION))
+			return name.substring(0, name.length() - SUMMARY_EXTENSION.length()) +
+					SAMPLES_EXTENSION;
+		return name.substring(0, name.length() - SAMPLES_EXTENSION.length()) +
+				SUMMARY_EXTENSION;
+	}
+}
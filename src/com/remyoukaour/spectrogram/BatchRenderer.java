@@ -0,0 +1,301 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchRenderer {
+	private static final int DEFAULT_BINS = 2048;
+	private static final double DEFAULT_OVERLAP = 0.5;
+	private static final WindowFunction DEFAULT_WINDOW = WindowFunction.HAMMING;
+	private static final StorageMode DEFAULT_STORAGE = StorageMode.MAPPED;
+	private static final String[] AUDIO_EXTENSIONS = {"wav", "au", "mp3", "ogg", "oga"};
+	private static final String IMAGE_EXTENSION = "png";
+	
+	private int bins = DEFAULT_BINS;
+	private double overlap = DEFAULT_OVERLAP;
+	private WindowFunction window = DEFAULT_WINDOW;
+	private StorageMode storage = DEFAULT_STORAGE;
+	private boolean logAxis = false;
+	private boolean showPhase = false;
+	private boolean splitChannels = false;
+	private AnalysisCache cache = null;
+	private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	private File output = null;
+	private final List<Source> files = new ArrayList<Source>();
+	
+	public static void main(String[] args) {
+		BatchRenderer batch = new BatchRenderer();
+		try {
+			batch.parse(args);
+		}
+		catch (IllegalArgumentException ex) {
+			System.err.println("Error: " + ex.getMessage());
+			usage();
+			System.exit(2);
+		}
+		catch (IOException ex) {
+			System.err.println("Error: " + ex.getMessage());
+			System.exit(2);
+		}
+		if (batch.files.isEmpty()) {
+			usage();
+			System.exit(2);
+		}
+		System.exit(batch.run() ? 0 : 1);
+	}
+	
+	private static void usage() {
+		StringBuilder windows = new StringBuilder();
+		for (WindowFunction w : WindowFunction.values()) {
+			windows.append(windows.length() > 0 ? ", " : "").append(w.name().toLowerCase());
+		}
+		System.err.println("Usage: spectrogram [options] <file|dir|glob>...\n" +
+				"  -b, --bins N        frequency bins (default " + DEFAULT_BINS + ")\n" +
+				"  -o, --overlap P     spectrum overlap percent (default " +
+				FormatUtils.formatPercent(1 - DEFAULT_OVERLAP) + ")\n" +
+				"  -w, --window NAME   window function (default " +
+				DEFAULT_WINDOW.name().toLowerCase() + ")\n" +
+				"                      " + windows + "\n" +
+				"  -l, --log           logarithmic frequency axis\n" +
+				"  -p, --phase         show phase instead of power\n" +
+				"  -a, --channels      stack a spectrogram for each channel\n" +
+				"  -s, --storage MODE  memory, disk or mapped (default " +
+				DEFAULT_STORAGE.name().toLowerCase() + ")\n" +
+				"  -c, --cache         reuse and keep decoded audio in the analysis cache\n" +
+				"  -t, --threads N     files rendered at once\n" +
+				"  -d, --output DIR    directory for images, keeping the paths below each\n" +
+				"                      directory or glob (default: next to each file)");
+	}
+	
+	private void parse(String[] args) throws IOException {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-b") || arg.equals("--bins"))
+				bins = parsePositive(value(args, ++i, arg));
+			else if (arg.equals("-o") || arg.equals("--overlap"))
+				overlap = parseOverlap(value(args, ++i, arg));
+			else if (arg.equals("-w") || arg.equals("--window"))
+				window = parseEnum(WindowFunction.class, value(args, ++i, arg));
+			else if (arg.equals("-s") || arg.equals("--storage"))
+				storage = parseEnum(StorageMode.class, value(args, ++i, arg));
+			else if (arg.equals("-l") || arg.equals("--log"))
+				logAxis = true;
+			else if (arg.equals("-p") || arg.equals("--phase"))
+				showPhase = true;
+			else if (arg.equals("-a") || arg.equals("--channels"))
+				splitChannels = true;
+			else if (arg.equals("-c") || arg.equals("--cache"))
+				cache = AnalysisCache.getDefault();
+			else if (arg.equals("-t") || arg.equals("--threads"))
+				threads = parsePositive(value(args, ++i, arg));
+			else if (arg.equals("-d") || arg.equals("--output"))
+				output = new File(value(args, ++i, arg));
+			else if (arg.startsWith("-") && arg.length() > 1)
+				throw new IllegalArgumentException("unknown option " + arg);
+			else
+				expand(arg);
+		}
+		if (output != null && !output.isDirectory() && !output.mkdirs())
+			throw new IOException("cannot create " + output);
+	}
+	
+	private static String value(String[] args, int i, String option) {
+		if (i >= args.length)
+			throw new IllegalArgumentException(option + " needs a value");
+		return args[i];
+	}
+	
+	private static int parsePositive(String s) {
+		int v = Integer.parseInt(s);
+		if (v <= 0)
+			throw new IllegalArgumentException("expected a positive number: " + s);
+		return v;
+	}
+	
+	private static double parseOverlap(String s) {
+		double v = Double.parseDouble(s.endsWith("%") ?
+				s.substring(0, s.length() - 1) : s) / 100;
+		if (v < 0 || v >= 1)
+			throw new IllegalArgumentException("overlap must be from 0 to 100%: " + s);
+		return 1 - v;
+	}
+	
+	private static <E extends Enum<E>> E parseEnum(Class<E> type, String s) {
+		try {
+			return Enum.valueOf(type, s.toUpperCase().replace('-', '_'));
+		}
+		catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException("unknown value " + s);
+		}
+	}
+	
+	private void expand(String arg) throws IOException {
+		File f = new File(arg);
+		if (f.isFile()) {
+			files.add(new Source(f, f.getName()));
+			return;
+		}
+		if (f.isDirectory()) {
+			File[] children = f.listFiles();
+			Arrays.sort(children);
+			for (File child : children) {
+				if (child.isFile() && isAudio(child))
+					files.add(new Source(child, child.getName()));
+			}
+			return;
+		}
+		// treat anything else as a glob relative to its last literal directory
+		String pattern = arg.replace(File.separatorChar, '/');
+		int wild = indexOfWildcard(pattern);
+		if (wild < 0)
+			throw new FileNotFoundException(arg);
+		int slash = pattern.lastIndexOf('/', wild);
+		Path base = Paths.get(slash < 0 ? "." : slash == 0 ? "/" : pattern.substring(0, slash));
+		final PathMatcher matcher = FileSystems.getDefault().getPathMatcher(
+				"glob:" + pattern.substring(slash + 1));
+		final Path root = base;
+		final List<Path> matches = new ArrayList<Path>();
+		Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile() && matcher.matches(root.relativize(path)))
+					matches.add(path);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(matches);
+		for (Path path : matches) {
+			files.add(new Source(path.toFile(), root.relativize(path).toString()));
+		}
+	}
+	
+	private static int indexOfWildcard(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if ("*?[{".indexOf(s.charAt(i)) >= 0)
+				return i;
+		}
+		return -1;
+	}
+	
+	private static boolean isAudio(File f) {
+		String name = f.getName().toLowerCase();
+		for (String ext : AUDIO_EXTENSIONS) {
+			if (name.endsWith("." + ext))
+				return true;
+		}
+		return false;
+	}
+	
+	private File getImageFile(Source source) {
+		// the source extension is kept, so rec.wav and rec.mp3 differ
+		if (output != null)
+			return new File(output, source.path + "." + IMAGE_EXTENSION);
+		File f = source.file.getAbsoluteFile();
+		return new File(f.getParentFile(), f.getName() + "." + IMAGE_EXTENSION);
+	}
+	
+	public boolean run() {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final AtomicInteger failures = new AtomicInteger();
+		final int total = files.size();
+		final AtomicInteger done = new AtomicInteger();
+		long start = System.nanoTime();
+		// two files writing one image would overwrite each other, so only
+		// the first gets it
+		Map<File, File> images = new HashMap<File, File>();
+		List<Future<Long>> results = new ArrayList<Future<Long>>();
+		for (Source source : files) {
+			final File f = source.file;
+			final File image = getImageFile(source);
+			File key = image.toPath().toAbsolutePath().normalize().toFile();
+			File other = images.get(key);
+			if (other != null) {
+				failures.incrementAndGet();
+				System.err.printf("[%d/%d] %s: failed: %s is already written for %s%n",
+						done.incrementAndGet(), total, f, image, other);
+				continue;
+			}
+			images.put(key, f);
+			results.add(pool.submit(new Callable<Long>() {
+				public Long call() {
+					try {
+						long samples = render(f);
+						return samples;
+					}
+					catch (Exception ex) {
+						failures.incrementAndGet();
+						System.err.printf("[%d/%d] %s: failed: %s%n",
+								done.incrementAndGet(), total, f, ex);
+						return 0L;
+					}
+				}
+				
+				private long render(File f) throws Exception {
+					long t0 = System.nanoTime();
+					Signal signal = Signal.fromFile(f, storage, cache);
+					long t1 = System.nanoTime();
+					try {
+						Spectrogram spectrogram = new Spectrogram(bins, overlap,
+								window, logAxis, false, showPhase);
+						spectrogram.setSignal(signal);
+						spectrogram.setSplitChannels(splitChannels);
+						File dir = image.getParentFile();
+						if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+							throw new IOException("cannot create " + dir);
+						int count = spectrogram.save(image, IMAGE_EXTENSION);
+						long t2 = System.nanoTime();
+						long n = signal.getNumSamples();
+						double seconds = (t2 - t0) / 1e9;
+						System.out.printf("[%d/%d] %s -> %s%s: %s in %.2f s " +
+								"(decode %.2f s, render %.2f s, %.1fx realtime, " +
+								"%.2f MB/s)%n", done.incrementAndGet(), total,
+								f.getName(), count > 1 ? Spectrogram.getStripFile(image,
+								0, IMAGE_EXTENSION).getName() : image.getName(),
+								count > 1 ? " (" + count + " strips)" : "",
+								FormatUtils.formatCount(n, "sample"), seconds,
+								(t1 - t0) / 1e9, (t2 - t1) / 1e9,
+								n / (double)signal.getHertz() / seconds,
+								f.length() / 1e6 / seconds);
+						return n;
+					}
+					finally {
+						signal.close();
+					}
+				}
+			}));
+		}
+		pool.shutdown();
+		long samples = 0;
+		for (Future<Long> result : results) {
+			try {
+				samples += result.get();
+			}
+			catch (InterruptedException ex) {
+				pool.shutdownNow();
+				return false;
+			}
+			catch (ExecutionException ex) {
+				failures.incrementAndGet();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Rendered %d of %d files (%s) in %.2f s, %.0f samples/s%n",
+				total - failures.get(), total,
+				FormatUtils.formatCount(samples, "sample"), seconds, samples / seconds);
+		return failures.get() == 0;
+	}
+	
+	private static class Source {
+		private final File file;
+		// where the image goes below the output directory
+		private final String path;
+		
+		public Source(File file, String path) {
+			this.file = file;
+			this.path = path;
+		}
+	}
+}
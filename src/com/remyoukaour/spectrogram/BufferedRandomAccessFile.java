@@ -44,9 +44,15 @@ public class BufferedRandomAccessFile extends RandomAccessFile {
 	}
 	
 	public void writeBuffered(byte[] b, int off, int len) throws IOException {
-		int s = off + len;
-		for (int i = off; i < s; i++) {
-			writeBuffered(b[i]);
+		while (len > 0) {
+			int n = Math.min(len, size - at);
+			System.arraycopy(b, off, buffer, at, n);
+			at += n;
+			off += n;
+			len -= n;
+			if (at >= size) {
+				flushBuffer();
+			}
 		}
 	}
 	
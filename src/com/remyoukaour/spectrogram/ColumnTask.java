@@ -0,0 +1,69 @@
+package com.remyoukaour.spectrogram;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ColumnTask extends RecursiveAction {
+	private static final long serialVersionUID = 2209563174L;
+	
+	private static final int THRESHOLD = 64;
+	
+	private final Signal signal;
+	private final int channel;
+	private final int bins, sw;
+	private final WindowFunction window;
+	private final boolean showPhase;
+	private final int[] lbins;
+	private final Palette palette;
+	private final int[] pixels;
+	private final int offset, width, first, from, to;
+	private final AtomicInteger progress;
+	private final AtomicBoolean cancelled;
+	
+	public ColumnTask(Signal signal, int channel, int bins, int sw,
+			WindowFunction window, boolean showPhase, int[] lbins, Palette palette,
+			int[] pixels, int offset, int width, int first, int from, int to,
+			AtomicInteger progress, AtomicBoolean cancelled) {
+		this.signal = signal;
+		this.channel = channel;
+		this.bins = bins;
+		this.sw = sw;
+		this.window = window;
+		this.showPhase = showPhase;
+		this.lbins = lbins;
+		this.palette = palette;
+		this.pixels = pixels;
+		this.offset = offset;
+		this.width = width;
+		this.first = first;
+		this.from = from;
+		this.to = to;
+		this.progress = progress;
+		this.cancelled = cancelled;
+	}
+	
+	private ColumnTask split(int from, int to) {
+		return new ColumnTask(signal, channel, bins, sw, window, showPhase, lbins,
+				palette, pixels, offset, width, first, from, to, progress, cancelled);
+	}
+	
+	protected void compute() {
+		if (to - from > THRESHOLD) {
+			int mid = (from + to) >>> 1;
+			invokeAll(split(from, mid), split(mid, to));
+			return;
+		}
+		double[] spectrum = new double[bins];
+		SlidingSpectrum spectra = new SlidingSpectrum(signal, channel, bins, window,
+				showPhase, sw);
+		for (int c = from; c < to; c++) {
+			if (cancelled.get())
+				return;
+			spectra.read((long)c * sw, spectrum);
+			palette.paintColumn(spectrum, lbins, showPhase, pixels,
+					offset + c - first, 1, width);
+			progress.incrementAndGet();
+		}
+	}
+}
@@ -7,6 +7,7 @@ public class DualScrollPane extends JPanel {
 	private static final long serialVersionUID = 8254516895802138993L;
 	
 	private final JSplitPane splitPane;
+	private final BoundedRangeModel horizontal;
 	
 	public DualScrollPane(JScrollPane pane1, JScrollPane pane2, boolean shareH, boolean shareV) {
 		splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, pane1, pane2);
@@ -17,5 +18,18 @@ public class DualScrollPane extends JPanel {
 			pane1.getHorizontalScrollBar().setModel(pane2.getHorizontalScrollBar().getModel());
 		if (shareV)
 			pane1.getVerticalScrollBar().setModel(pane2.getVerticalScrollBar().getModel());
+		// scrolling copies what is still in view instead of repainting it
+		pane1.getViewport().setScrollMode(JViewport.BLIT_SCROLL_MODE);
+		pane2.getViewport().setScrollMode(JViewport.BLIT_SCROLL_MODE);
+		horizontal = pane2.getHorizontalScrollBar().getModel();
+	}
+	
+	public void follow(int x) {
+		// once x reaches the middle it stays there, so each step is a short
+		// scroll; if it is out of view it is brought to the middle
+		int value = horizontal.getValue();
+		int extent = horizontal.getExtent();
+		if (x < value || x > value + extent / 2)
+			horizontal.setValue(x - extent / 2);
 	}
 }
@@ -0,0 +1,46 @@
+package com.remyoukaour.spectrogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+
+public class FFTCache {
+	private static final int CAPACITY = 4;
+	
+	private static final ThreadLocal<Map<Integer, DoubleFFT_1D>> plans =
+			new ThreadLocal<Map<Integer, DoubleFFT_1D>>() {
+		protected Map<Integer, DoubleFFT_1D> initialValue() {
+			return new LinkedHashMap<Integer, DoubleFFT_1D>(CAPACITY + 1, 1.1f, true) {
+				private static final long serialVersionUID = 1938458012L;
+				
+				protected boolean removeEldestEntry(Map.Entry<Integer, DoubleFFT_1D> eldest) {
+					return size() > CAPACITY;
+				}
+			};
+		}
+	};
+	
+	private static final ThreadLocal<double[]> buffers = new ThreadLocal<double[]>();
+	
+	private FFTCache() {}
+	
+	public static DoubleFFT_1D get(int length) {
+		Map<Integer, DoubleFFT_1D> cache = plans.get();
+		DoubleFFT_1D fft = cache.get(length);
+		if (fft == null) {
+			fft = new DoubleFFT_1D(length);
+			cache.put(length, fft);
+		}
+		return fft;
+	}
+	
+	public static double[] getBuffer(int length) {
+		// per-thread scratch space, only valid until the next call
+		double[] buffer = buffers.get();
+		if (buffer == null || buffer.length != length) {
+			buffer = new double[length];
+			buffers.set(buffer);
+		}
+		return buffer;
+	}
+}
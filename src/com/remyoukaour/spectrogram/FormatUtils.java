@@ -3,7 +3,7 @@ package com.remyoukaour.spectrogram;
 import java.text.DecimalFormat;
 
 public class FormatUtils {
-	public static String formatInt(int n) {
+	public static String formatInt(long n) {
 		return String.format("%,d", n);
 	}
 	
@@ -13,7 +13,7 @@ public class FormatUtils {
 		return String.format("%s%sx", p, formatInt(v));
 	}
 	
-	public static String formatCount(int n, String word) {
+	public static String formatCount(long n, String word) {
 		String s = n != 1 ? "s" : "";
 		return String.format("%s %s%s", formatInt(n), word, s);
 	}
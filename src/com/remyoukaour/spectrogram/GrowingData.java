@@ -0,0 +1,42 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.IOException;
+
+public class GrowingData extends SampledData {
+	private final SampledData data;
+	private volatile long available;
+	
+	public GrowingData(SampledData data) {
+		this.data = data;
+		this.available = 0;
+	}
+	
+	public long size() {
+		return available;
+	}
+	
+	public long capacity() {
+		return data.size();
+	}
+	
+	public boolean isComplete() {
+		return available == data.size();
+	}
+	
+	public void grow(long available) {
+		data.written(available);
+		this.available = available;
+	}
+	
+	public double get(long i) {
+		return data.get(i);
+	}
+	
+	protected void copy(long start, int length, double[] dst, int off) {
+		data.copy(start, length, dst, off);
+	}
+	
+	public void close() throws IOException {
+		data.close();
+	}
+}
@@ -0,0 +1,225 @@
+package com.remyoukaour.spectrogram;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class Metrics implements MetricsMXBean {
+	public static final String OBJECT_NAME = "com.remyoukaour.spectrogram:type=Metrics";
+	
+	private static final ConcurrentMap<String, Counter> counters =
+			new ConcurrentHashMap<String, Counter>();
+	private static final ConcurrentMap<String, Histogram> histograms =
+			new ConcurrentHashMap<String, Histogram>();
+	private static final boolean FLIGHT_RECORDER = hasFlightRecorder();
+	private static boolean registered = false;
+	
+	public static final Counter DECODED_SAMPLES = counter("decode.samples");
+	public static final Histogram DECODE_TIME = histogram("decode.read");
+	public static final Counter BLOCK_HITS = counter("disk.hits");
+	public static final Counter BLOCK_MISSES = counter("disk.misses");
+	public static final Histogram BLOCK_READ_TIME = histogram("disk.read");
+	public static final Counter SPECTRA = counter("spectra");
+	public static final Histogram TILE_TIME = histogram("tile.render");
+	public static final Counter EXPORTED_COLUMNS = counter("export.columns");
+	public static final Histogram EXPORT_TIME = histogram("export.save");
+	public static final Counter SYNTHESIZED_SAMPLES = counter("synthesis.samples");
+	public static final Histogram SYNTHESIS_TIME = histogram("synthesis.convert");
+	
+	private static boolean hasFlightRecorder() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		}
+		catch (Throwable ex) {
+			return false;
+		}
+	}
+	
+	public static Counter counter(String name) {
+		Counter counter = counters.get(name);
+		if (counter == null) {
+			Counter created = new Counter();
+			counter = counters.putIfAbsent(name, created);
+			if (counter == null)
+				counter = created;
+		}
+		return counter;
+	}
+	
+	public static Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			Histogram created = new Histogram(name);
+			histogram = histograms.putIfAbsent(name, created);
+			if (histogram == null)
+				histogram = created;
+		}
+		return histogram;
+	}
+	
+	public static synchronized void register() {
+		if (registered)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(),
+					new ObjectName(OBJECT_NAME));
+			registered = true;
+		}
+		catch (JMException ex) {
+			ex.printStackTrace();
+		}
+	}
+	
+	public static Map<String, Long> counts() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		for (Map.Entry<String, Counter> e : counters.entrySet()) {
+			counts.put(e.getKey(), e.getValue().get());
+		}
+		for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+			counts.put(e.getKey() + ".count", e.getValue().getCount());
+		}
+		return counts;
+	}
+	
+	public Map<String, Long> getCounters() {
+		return counts();
+	}
+	
+	public Map<String, Double> getMeanMillis() {
+		Map<String, Double> means = new TreeMap<String, Double>();
+		for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+			means.put(e.getKey(), e.getValue().getMean() / 1e6);
+		}
+		return means;
+	}
+	
+	public Map<String, Double> getP99Millis() {
+		Map<String, Double> percentiles = new TreeMap<String, Double>();
+		for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+			percentiles.put(e.getKey(), e.getValue().getPercentile(0.99) / 1e6);
+		}
+		return percentiles;
+	}
+	
+	public Map<String, Double> getMaxMillis() {
+		Map<String, Double> maxima = new TreeMap<String, Double>();
+		for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+			maxima.put(e.getKey(), e.getValue().getMax() / 1e6);
+		}
+		return maxima;
+	}
+	
+	public void reset() {
+		for (Counter counter : counters.values()) {
+			counter.reset();
+		}
+		for (Histogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+	
+	public static class Counter {
+		private final AtomicLong count = new AtomicLong();
+		
+		public void increment() {
+			count.incrementAndGet();
+		}
+		
+		public void add(long n) {
+			count.addAndGet(n);
+		}
+		
+		public long get() {
+			return count.get();
+		}
+		
+		public void reset() {
+			count.set(0);
+		}
+	}
+	
+	public static class Histogram {
+		// bucket i holds durations below 2^i nanoseconds
+		private static final int BUCKETS = 64;
+		
+		private final String name;
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+		
+		public Histogram(String name) {
+			this.name = name;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		// the start is a plain timestamp, so timing a phase allocates nothing
+		public long start() {
+			return System.nanoTime();
+		}
+		
+		public void stop(long start) {
+			long nanos = System.nanoTime() - start;
+			record(nanos);
+			if (FLIGHT_RECORDER)
+				PhaseEvent.commit(name, nanos);
+		}
+		
+		public void record(long nanos) {
+			nanos = Math.max(nanos, 0);
+			buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+			count.incrementAndGet();
+			total.addAndGet(nanos);
+			long m;
+			while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {}
+		}
+		
+		public long getCount() {
+			return count.get();
+		}
+		
+		public long getTotal() {
+			return total.get();
+		}
+		
+		public long getMax() {
+			return max.get();
+		}
+		
+		public double getMean() {
+			long n = count.get();
+			return n > 0 ? (double)total.get() / n : 0.0;
+		}
+		
+		public long getPercentile(double p) {
+			long n = count.get();
+			if (n == 0)
+				return 0;
+			long rank = (long)Math.ceil(p * n), seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank)
+					return Math.min(i < 63 ? 1L << i : Long.MAX_VALUE, max.get());
+			}
+			return max.get();
+		}
+		
+		public void reset() {
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets.set(i, 0);
+			}
+			count.set(0);
+			total.set(0);
+			max.set(0);
+		}
+	}
+}
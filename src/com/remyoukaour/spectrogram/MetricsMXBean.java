@@ -0,0 +1,15 @@
+package com.remyoukaour.spectrogram;
+
+import java.util.Map;
+
+public interface MetricsMXBean {
+	public Map<String, Long> getCounters();
+	
+	public Map<String, Double> getMeanMillis();
+	
+	public Map<String, Double> getP99Millis();
+	
+	public Map<String, Double> getMaxMillis();
+	
+	public void reset();
+}
@@ -0,0 +1,72 @@
+package com.remyoukaour.spectrogram;
+
+import java.awt.event.*;
+import javax.swing.Timer;
+
+public class MetricsReadout implements ActionListener {
+	private static final int INTERVAL = 1000;
+	
+	private final StatusBar statusBar;
+	private final Timer timer = new Timer(INTERVAL, this);
+	private final Metrics.Histogram spectrogramPaint =
+			Metrics.histogram("paint.spectrogram");
+	private final Metrics.Histogram waveformPaint = Metrics.histogram("paint.waveform");
+	private long lastTime;
+	private long spectra, decoded, hits, misses, exported;
+	private long spectrogramCount, spectrogramTotal, waveformCount, waveformTotal;
+	
+	public MetricsReadout(StatusBar statusBar) {
+		this.statusBar = statusBar;
+	}
+	
+	public void start() {
+		sample(System.nanoTime());
+		timer.start();
+	}
+	
+	public void stop() {
+		timer.stop();
+		statusBar.setDetails("");
+	}
+	
+	public void actionPerformed(ActionEvent event) {
+		long now = System.nanoTime();
+		double seconds = (now - lastTime) / 1e9;
+		long spectraRate = (long)((Metrics.SPECTRA.get() - spectra) / seconds);
+		long decodeRate = (long)((Metrics.DECODED_SAMPLES.get() - decoded) / seconds);
+		long exportRate = (long)((Metrics.EXPORTED_COLUMNS.get() - exported) / seconds);
+		long reads = Metrics.BLOCK_HITS.get() - hits + Metrics.BLOCK_MISSES.get() - misses;
+		double hitRate = reads > 0 ? (double)(Metrics.BLOCK_HITS.get() - hits) / reads : 1.0;
+		double spectrogramMillis = meanMillis(spectrogramPaint.getTotal() -
+				spectrogramTotal, spectrogramPaint.getCount() - spectrogramCount);
+		double waveformMillis = meanMillis(waveformPaint.getTotal() - waveformTotal,
+				waveformPaint.getCount() - waveformCount);
+		Runtime runtime = Runtime.getRuntime();
+		long used = (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+		long max = runtime.maxMemory() >> 20;
+		statusBar.setDetails(String.format("%s spectra/s | %s samples/s decoded | " +
+				"%s block hits | paint %.1f/%.1f ms | %s columns/s saved | %s/%s MB",
+				FormatUtils.formatInt(spectraRate), FormatUtils.formatInt(decodeRate),
+				FormatUtils.formatPercent(hitRate), spectrogramMillis, waveformMillis,
+				FormatUtils.formatInt(exportRate), FormatUtils.formatInt(used),
+				FormatUtils.formatInt(max)));
+		sample(now);
+	}
+	
+	private static double meanMillis(long nanos, long count) {
+		return count > 0 ? nanos / 1e6 / count : 0.0;
+	}
+	
+	private void sample(long now) {
+		lastTime = now;
+		spectra = Metrics.SPECTRA.get();
+		decoded = Metrics.DECODED_SAMPLES.get();
+		hits = Metrics.BLOCK_HITS.get();
+		misses = Metrics.BLOCK_MISSES.get();
+		exported = Metrics.EXPORTED_COLUMNS.get();
+		spectrogramCount = spectrogramPaint.getCount();
+		spectrogramTotal = spectrogramPaint.getTotal();
+		waveformCount = waveformPaint.getCount();
+		waveformTotal = waveformPaint.getTotal();
+	}
+}
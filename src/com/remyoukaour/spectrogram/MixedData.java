@@ -0,0 +1,65 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.IOException;
+
+public class MixedData extends SampledData {
+	private static final ThreadLocal<double[]> scratch = new ThreadLocal<double[]>() {
+		protected double[] initialValue() {
+			return new double[0];
+		}
+	};
+	
+	private final SampledData[] channels;
+	private final double scale;
+	
+	public MixedData(SampledData[] channels) {
+		this.channels = channels;
+		this.scale = 1.0 / channels.length;
+	}
+	
+	public long size() {
+		long size = channels[0].size();
+		for (int c = 1; c < channels.length; c++) {
+			size = Math.min(size, channels[c].size());
+		}
+		return size;
+	}
+	
+	public double get(long i) {
+		double v = 0.0;
+		for (SampledData channel : channels) {
+			v += channel.get(i);
+		}
+		return v * scale;
+	}
+	
+	protected void copy(long start, int length, double[] dst, int off) {
+		double[] buffer = scratch.get();
+		if (buffer.length < length) {
+			buffer = new double[length];
+			scratch.set(buffer);
+		}
+		channels[0].copy(start, length, dst, off);
+		for (int c = 1; c < channels.length; c++) {
+			channels[c].copy(start, length, buffer, 0);
+			for (int i = 0; i < length; i++) {
+				dst[off + i] += buffer[i];
+			}
+		}
+		for (int i = off; i < off + length; i++) {
+			dst[i] *= scale;
+		}
+	}
+	
+	protected void written(long length) {
+		for (SampledData channel : channels) {
+			channel.written(length);
+		}
+	}
+	
+	public void close() throws IOException {
+		for (SampledData channel : channels) {
+			channel.close();
+		}
+	}
+}
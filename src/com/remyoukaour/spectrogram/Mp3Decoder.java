@@ -0,0 +1,87 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.*;
+import javazoom.jl.decoder.*;
+
+public class Mp3Decoder {
+	// enough frames for the bit reservoir and the synthesis filters to
+	// settle, so the first kept frame decodes as it would in one pass
+	public static final int PREROLL_FRAMES = 8;
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private final File file;
+	private final Mp3Index index;
+	private FileInputStream in = null;
+	private Bitstream stream = null;
+	private Decoder decoder = null;
+	private int frame = -1;
+	
+	public Mp3Decoder(File file, Mp3Index index) {
+		this.file = file;
+		this.index = index;
+	}
+	
+	public int getFrame() {
+		return frame;
+	}
+	
+	public void seek(int frame) throws IOException {
+		close();
+		in = new FileInputStream(file);
+		in.getChannel().position(index.getOffset(frame));
+		stream = new Bitstream(new BufferedInputStream(in, BUFFER_SIZE));
+		decoder = new Decoder();
+		this.frame = frame;
+	}
+	
+	public int read(double[][] buffers) throws IOException {
+		// returns the samples per channel, 0 for a damaged frame, or -1 at the end
+		if (stream == null || frame >= index.getFrameCount())
+			return -1;
+		Header header;
+		try {
+			header = stream.readFrame();
+		}
+		catch (BitstreamException ex) {
+			throw new IOException("failed to read frame", ex);
+		}
+		if (header == null)
+			return -1;
+		long timing = Metrics.DECODE_TIME.start();
+		SampleBuffer output = decode(header);
+		Metrics.DECODE_TIME.stop(timing);
+		stream.closeFrame();
+		frame++;
+		if (output == null)
+			return 0;
+		int channels = buffers.length;
+		short[] samples = output.getBuffer();
+		int n = Math.min(output.getBufferLength() / channels,
+				index.getSamplesPerFrame());
+		for (int i = 0, k = 0; i < n; i++) {
+			for (int c = 0; c < channels; c++, k++) {
+				buffers[c][i] = samples[k] / 32768.0;
+			}
+		}
+		return n;
+	}
+	
+	private SampleBuffer decode(Header header) {
+		try {
+			return (SampleBuffer)decoder.decodeFrame(header, stream);
+		}
+		catch (DecoderException ex) {
+			// a damaged frame is left silent, as it is in one pass
+			return null;
+		}
+	}
+	
+	public void close() throws IOException {
+		if (in != null)
+			in.close();
+		in = null;
+		stream = null;
+		decoder = null;
+		frame = -1;
+	}
+}
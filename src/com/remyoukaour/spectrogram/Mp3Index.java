@@ -0,0 +1,254 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class Mp3Index {
+	private static final int WINDOW = 1 << 16;
+	private static final int STREAM_MASK = 0xFFFE0C00;
+	private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+	// kbps by MPEG-1 or later, layer, and bitrate index
+	private static final int[][][] BITRATES = {
+		{
+			{0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+			{0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+			{0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}
+		},
+		{
+			{0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+			{0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+			{0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+		}
+	};
+	
+	private final long[] offsets;
+	private final int frames;
+	private final int header;
+	private final int hertz;
+	private final int channels;
+	private final int samplesPerFrame;
+	
+	private Mp3Index(long[] offsets, int frames, int header) {
+		this.offsets = offsets;
+		this.frames = frames;
+		this.header = header;
+		this.hertz = getSampleRate(header);
+		this.channels = ((header >> 6) & 3) == 3 ? 1 : 2;
+		this.samplesPerFrame = getSamplesPerFrame(header);
+	}
+	
+	public static boolean isMp3(File f) {
+		return f.getName().toLowerCase().endsWith(".mp3");
+	}
+	
+	public static Mp3Index scan(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			return scan(new Reader(raf.getChannel()));
+		}
+		finally {
+			raf.close();
+		}
+	}
+	
+	private static Mp3Index scan(Reader in) throws IOException {
+		long pos = skipTags(in);
+		pos = sync(in, pos, 0);
+		if (pos < 0)
+			return null;
+		int stream = in.getInt(pos);
+		long[] offsets = new long[1024];
+		int frames = 0;
+		while (pos >= 0) {
+			int length = getFrameLength(in.getInt(pos));
+			if (pos + length > in.size())
+				break; // a truncated last frame
+			if (frames == offsets.length)
+				offsets = Arrays.copyOf(offsets, frames * 2);
+			offsets[frames++] = pos;
+			pos += length;
+			if (pos + 4 > in.size())
+				break;
+			if (!sameStream(stream, in.getInt(pos)))
+				pos = sync(in, pos, stream);
+		}
+		return frames > 0 ? new Mp3Index(offsets, frames, stream) : null;
+	}
+	
+	public static Mp3Index read(DataInput in) throws IOException {
+		int header = in.readInt();
+		int frames = in.readInt();
+		if (frames < 1 || getFrameLength(header) < 0)
+			throw new IOException("invalid index");
+		long[] offsets = new long[frames];
+		for (int f = 0; f < frames; f++) {
+			offsets[f] = in.readLong();
+		}
+		return new Mp3Index(offsets, frames, header);
+	}
+	
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(header);
+		out.writeInt(frames);
+		for (int f = 0; f < frames; f++) {
+			out.writeLong(offsets[f]);
+		}
+	}
+	
+	private static long skipTags(Reader in) throws IOException {
+		long pos = 0;
+		// ID3v2 tags: "ID3", version, flags, then a sync-safe size
+		while (pos + 10 <= in.size() && (in.getInt(pos) >>> 8) == 0x494433) {
+			int flags = in.getByte(pos + 5);
+			int size = 0;
+			for (int i = 6; i < 10; i++) {
+				size = (size << 7) | (in.getByte(pos + i) & 0x7F);
+			}
+			pos += 10 + size + ((flags & 0x10) != 0 ? 10 : 0);
+		}
+		return pos;
+	}
+	
+	private static long sync(Reader in, long pos, int stream) throws IOException {
+		// a header only counts if another one follows it, or the file ends
+		for (; pos + 4 <= in.size(); pos++) {
+			int header = in.getInt(pos);
+			if (stream != 0 ? !sameStream(stream, header) : getFrameLength(header) < 0)
+				continue;
+			long next = pos + getFrameLength(header);
+			if (next == in.size() || (next + 4 <= in.size() &&
+					sameStream(header, in.getInt(next))))
+				return pos;
+		}
+		return -1;
+	}
+	
+	private static boolean sameStream(int stream, int header) {
+		return (header & STREAM_MASK) == (stream & STREAM_MASK) &&
+				(((header >> 6) & 3) == 3) == (((stream >> 6) & 3) == 3) &&
+				getFrameLength(header) > 0;
+	}
+	
+	private static int getVersion(int header) {
+		// 0 for MPEG-1, 1 for MPEG-2, 2 for MPEG-2.5
+		switch ((header >> 19) & 3) {
+		case 3:
+			return 0;
+		case 2:
+			return 1;
+		case 0:
+			return 2;
+		default:
+			return -1;
+		}
+	}
+	
+	private static int getLayer(int header) {
+		int bits = (header >> 17) & 3;
+		return bits != 0 ? 4 - bits : -1;
+	}
+	
+	private static int getSampleRate(int header) {
+		int version = getVersion(header);
+		int index = (header >> 10) & 3;
+		if (version < 0 || index == 3)
+			return -1;
+		return SAMPLE_RATES[index] >> version;
+	}
+	
+	private static int getSamplesPerFrame(int header) {
+		switch (getLayer(header)) {
+		case 1:
+			return 384;
+		case 2:
+			return 1152;
+		default:
+			return getVersion(header) == 0 ? 1152 : 576;
+		}
+	}
+	
+	private static int getFrameLength(int header) {
+		if ((header & 0xFFE00000) != 0xFFE00000)
+			return -1;
+		int version = getVersion(header);
+		int layer = getLayer(header);
+		int rate = getSampleRate(header);
+		int index = (header >> 12) & 0xF;
+		// free-format streams have no fixed frame length to index by
+		if (version < 0 || layer < 0 || rate < 0 || index == 0 || index == 15)
+			return -1;
+		int bitrate = BITRATES[Math.min(version, 1)][layer - 1][index] * 1000;
+		int padding = (header >> 9) & 1;
+		if (layer == 1)
+			return (12 * bitrate / rate + padding) * 4;
+		int factor = layer == 3 && version > 0 ? 72 : 144;
+		return factor * bitrate / rate + padding;
+	}
+	
+	public int getFrameCount() {
+		return frames;
+	}
+	
+	public long getOffset(int frame) {
+		return offsets[frame];
+	}
+	
+	public int getHertz() {
+		return hertz;
+	}
+	
+	public int getChannels() {
+		return channels;
+	}
+	
+	public int getSamplesPerFrame() {
+		return samplesPerFrame;
+	}
+	
+	public long getLength() {
+		return (long)frames * samplesPerFrame;
+	}
+	
+	private static class Reader {
+		private final FileChannel channel;
+		private final long size;
+		private final ByteBuffer window = ByteBuffer.allocate(WINDOW);
+		private long start = 0;
+		private int length = 0;
+		
+		public Reader(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+		}
+		
+		public long size() {
+			return size;
+		}
+		
+		public int getByte(long pos) throws IOException {
+			fill(pos, 1);
+			return window.get((int)(pos - start));
+		}
+		
+		public int getInt(long pos) throws IOException {
+			fill(pos, 4);
+			return window.getInt((int)(pos - start));
+		}
+		
+		private void fill(long pos, int n) throws IOException {
+			if (pos >= start && pos + n <= start + length)
+				return;
+			window.clear();
+			start = pos;
+			while (window.hasRemaining()) {
+				if (channel.read(window, start + window.position()) < 0)
+					break;
+			}
+			length = window.position();
+			if (length < n)
+				throw new EOFException();
+		}
+	}
+}
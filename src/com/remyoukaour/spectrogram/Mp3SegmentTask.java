@@ -0,0 +1,60 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class Mp3SegmentTask implements Callable<float[]> {
+	private final File file;
+	private final Mp3Index index;
+	private final int first, last;
+	private final SignalLoader loader;
+	private final AtomicBoolean cancelled;
+	
+	public Mp3SegmentTask(File file, Mp3Index index, int first, int last,
+			SignalLoader loader, AtomicBoolean cancelled) {
+		this.file = file;
+		this.index = index;
+		this.first = first;
+		this.last = last;
+		this.loader = loader;
+		this.cancelled = cancelled;
+	}
+	
+	public float[] call() throws IOException {
+		// the decoded samples are handed to the loader, and their mix is
+		// returned so the summary needs no second pass over them
+		int channels = index.getChannels();
+		int samplesPerFrame = index.getSamplesPerFrame();
+		double[][] buffers = new double[channels][samplesPerFrame];
+		ByteBuffer bytes = loader.createWriteBuffer(samplesPerFrame);
+		float[] mix = new float[(last - first) * samplesPerFrame];
+		Mp3Decoder decoder = new Mp3Decoder(file, index);
+		try {
+			decoder.seek(Math.max(0, first - Mp3Decoder.PREROLL_FRAMES));
+			for (int f = decoder.getFrame(); f < last; f++) {
+				if (cancelled.get())
+					return null;
+				int n = decoder.read(buffers);
+				if (n < 0)
+					break;
+				if (f < first || n == 0)
+					continue;
+				loader.write((long)f * samplesPerFrame, buffers, n, bytes);
+				int off = (f - first) * samplesPerFrame;
+				for (int i = 0; i < n; i++) {
+					double sum = 0.0;
+					for (int c = 0; c < channels; c++) {
+						sum += buffers[c][i];
+					}
+					mix[off + i] = (float)(sum / channels);
+				}
+			}
+		}
+		finally {
+			decoder.close();
+		}
+		return mix;
+	}
+}
@@ -0,0 +1,73 @@
+package com.remyoukaour.spectrogram;
+
+public class Palette {
+	public static final int SIZE = 4096;
+	
+	private static final int MAX_COLOR = 0xFF;
+	private static final int SEGMENT = SIZE / 4;
+	private static final int[] PHASE = new int[MAX_COLOR + 1];
+	
+	static {
+		for (int c = 0; c <= MAX_COLOR; c++) {
+			PHASE[c] = (c << 16) | (c << 8) | c;
+		}
+	}
+	
+	private final int[] power;
+	private final double scale;
+	
+	public Palette(int bins) {
+		double maxPower = bins * bins / 4.0;
+		double step = Math.log1p(maxPower) / 4;
+		this.scale = SEGMENT / step;
+		this.power = new int[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			int v = (i % SEGMENT) * MAX_COLOR / (SEGMENT - 1);
+			int r = 0, g = 0, b = 0;
+			switch (i / SEGMENT) {
+			case 0: // black to blue
+				b = v;
+				break;
+			case 1: // blue to green
+				g = v;
+				b = MAX_COLOR - g;
+				break;
+			case 2: // green to red
+				r = v;
+				g = MAX_COLOR - r;
+				break;
+			default: // red to white
+				r = MAX_COLOR;
+				g = v;
+				b = g;
+				break;
+			}
+			power[i] = (r << 16) | (g << 8) | b;
+		}
+	}
+	
+	public int powerColor(double power) {
+		int i = (int)(Math.log1p(power) * scale);
+		return this.power[i < SIZE ? i : SIZE - 1];
+	}
+	
+	public int phaseColor(double phase) {
+		int c = (int)(phase * MAX_COLOR);
+		if (c < 0) c = 0;
+		if (c > MAX_COLOR) c = MAX_COLOR;
+		return PHASE[c];
+	}
+	
+	public void paintColumn(double[] spectrum, int[] lbins, boolean showPhase,
+			int[] pixels, int x, int width, int stride) {
+		int bins = spectrum.length;
+		for (int j = 0, row = x; j < bins; j++, row += stride) {
+			int s = bins - (lbins != null ? lbins[j] : j) - 1;
+			double v = spectrum[s];
+			int rgb = showPhase ? phaseColor(v) : powerColor(v);
+			for (int k = row; k < row + width; k++) {
+				pixels[k] = rgb;
+			}
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.remyoukaour.spectrogram;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.sound.sampled.AudioFormat;
+
+public enum PcmDecoder {
+	UNSIGNED_8(1, SampleFormat.SHORT) {
+		public void decode(ByteBuffer src, int count, double[] dst) {
+			for (int i = 0; i < count; i++) {
+				dst[i] = ((src.get(i) & 0xFF) - 0x80) / 128.0;
+			}
+		}
+	},
+	SIGNED_8(1, SampleFormat.SHORT) {
+		public void decode(ByteBuffer src, int count, double[] dst) {
+			for (int i = 0; i < count; i++) {
+				dst[i] = src.get(i) / 128.0;
+			}
+		}
+	},
+	SIGNED_16(2, SampleFormat.SHORT) {
+		public void decode(ByteBuffer src, int count, double[] dst) {
+			for (int i = 0; i < count; i++) {
+				dst[i] = src.getShort(i * 2) / 32768.0;
+			}
+		}
+	},
+	SIGNED_24(3, SampleFormat.FLOAT) {
+		public void decode(ByteBuffer src, int count, double[] dst) {
+			// the high byte keeps its sign and the others are masked
+			if (src.order() == ByteOrder.BIG_ENDIAN) {
+				for (int i = 0, j = 0; i < count; i++, j += 3) {
+					int v = (src.get(j) << 16) | ((src.get(j + 1) & 0xFF) << 8) |
+							(src.get(j + 2) & 0xFF);
+					dst[i] = v / 8388608.0;
+				}
+			}
+			else {
+				for (int i = 0, j = 0; i < count; i++, j += 3) {
+					int v = (src.get(j + 2) << 16) | ((src.get(j + 1) & 0xFF) << 8) |
+							(src.get(j) & 0xFF);
+					dst[i] = v / 8388608.0;
+				}
+			}
+		}
+	},
+	// a float keeps only 24 bits, so these are stored at full precision
+	SIGNED_32(4, SampleFormat.DOUBLE) {
+		public void decode(ByteBuffer src, int count, double[] dst) {
+			for (int i = 0; i < count; i++) {
+				dst[i] = src.getInt(i * 4) / 2147483648.0;
+			}
+		}
+	},
+	FLOAT_32(4, SampleFormat.FLOAT) {
+		public void decode(ByteBuffer src, int count, double[] dst) {
+			for (int i = 0; i < count; i++) {
+				dst[i] = src.getFloat(i * 4);
+			}
+		}
+	},
+	FLOAT_64(8, SampleFormat.DOUBLE) {
+		public void decode(ByteBuffer src, int count, double[] dst) {
+			for (int i = 0; i < count; i++) {
+				dst[i] = src.getDouble(i * 8);
+			}
+		}
+	};
+	
+	private final int width;
+	private final SampleFormat sampleFormat;
+	
+	private PcmDecoder(int width, SampleFormat sampleFormat) {
+		this.width = width;
+		this.sampleFormat = sampleFormat;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public SampleFormat getSampleFormat() {
+		return sampleFormat;
+	}
+	
+	public abstract void decode(ByteBuffer src, int count, double[] dst);
+	
+	public static PcmDecoder forFormat(AudioFormat format) {
+		AudioFormat.Encoding encoding = format.getEncoding();
+		int width = format.getFrameSize() / format.getChannels();
+		for (PcmDecoder decoder : values()) {
+			if (decoder.width == width && decoder.accepts(encoding))
+				return decoder;
+		}
+		throw new IllegalArgumentException("Unsupported encoding: " + encoding +
+				", " + width * 8 + "-bit");
+	}
+	
+	private boolean accepts(AudioFormat.Encoding encoding) {
+		switch (this) {
+		case UNSIGNED_8:
+			return encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED);
+		case FLOAT_32:
+		case FLOAT_64:
+			return encoding.equals(AudioFormat.Encoding.PCM_FLOAT);
+		default:
+			return encoding.equals(AudioFormat.Encoding.PCM_SIGNED);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.remyoukaour.spectrogram;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("com.remyoukaour.spectrogram.Phase")
+@Label("Spectrogram Phase")
+@Category("Spectrogram")
+public class PhaseEvent extends Event {
+	private static final EventType TYPE = EventType.getEventType(PhaseEvent.class);
+	
+	@Label("Phase")
+	public String phase;
+	
+	@Label("Elapsed")
+	@Timespan(Timespan.NANOSECONDS)
+	public long elapsed;
+	
+	// only reached when the flight recorder exists, so callers still run
+	// without it; events are only created while a recording wants them
+	public static void commit(String phase, long nanos) {
+		if (!TYPE.isEnabled())
+			return;
+		PhaseEvent event = new PhaseEvent();
+		event.phase = phase;
+		event.elapsed = nanos;
+		event.commit();
+	}
+}
@@ -0,0 +1,69 @@
+package com.remyoukaour.spectrogram;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.Timer;
+
+public class PlaybackCursor implements ActionListener {
+	private static final int DEFAULT_REFRESH_RATE = 60;
+	private static final long UNCHANGED = Long.MIN_VALUE;
+	
+	private final SignalPanel[] panels;
+	private final DualScrollPane scroll;
+	private final Timer timer = new Timer(1000 / DEFAULT_REFRESH_RATE, this);
+	private final AtomicLong pending = new AtomicLong(UNCHANGED);
+	private volatile boolean follow = false;
+	
+	public PlaybackCursor(DualScrollPane scroll, SignalPanel... panels) {
+		this.scroll = scroll;
+		this.panels = panels;
+		timer.setCoalesce(true);
+	}
+	
+	public void setFollow(boolean follow) {
+		this.follow = follow;
+	}
+	
+	public void start(Component parent) {
+		timer.setDelay(1000 / getRefreshRate(parent));
+		timer.start();
+	}
+	
+	public void stop() {
+		timer.stop();
+		// the last position may have come in after the last tick
+		EventQueue.invokeLater(new Runnable() {
+			public void run() {
+				actionPerformed(null);
+			}
+		});
+	}
+	
+	public void update(long microseconds) {
+		// playback reports far more often than the screen can show, so only
+		// the latest position is kept until the next tick
+		pending.set(microseconds);
+	}
+	
+	public void actionPerformed(ActionEvent event) {
+		long microseconds = pending.getAndSet(UNCHANGED);
+		if (microseconds == UNCHANGED)
+			return;
+		for (SignalPanel panel : panels) {
+			if (panel.getSignal() != null)
+				panel.updateCursor(microseconds);
+		}
+		int x = panels[0].getCursorX();
+		if (follow && x >= 0)
+			scroll.follow(x);
+	}
+	
+	private static int getRefreshRate(Component parent) {
+		GraphicsConfiguration config = parent.getGraphicsConfiguration();
+		if (config == null)
+			return DEFAULT_REFRESH_RATE;
+		int rate = config.getDevice().getDisplayMode().getRefreshRate();
+		return rate > 0 ? rate : DEFAULT_REFRESH_RATE;
+	}
+}
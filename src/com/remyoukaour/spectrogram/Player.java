@@ -9,10 +9,16 @@ public class Player extends Thread {
 	
 	private final SignalWindow window;
 	private final Signal signal;
+	private final long start;
 	
 	public Player(SignalWindow window, Signal signal) {
+		this(window, signal, 0);
+	}
+	
+	public Player(SignalWindow window, Signal signal, long start) {
 		this.window = window;
 		this.signal = signal;
+		this.start = start;
 	}
 	
 	public void run() {
@@ -20,7 +26,7 @@ public class Player extends Thread {
 		AudioFormat format = null;
 		SourceDataLine outputLine = null;
 		try {
-			ain = signal.toStream();
+			ain = signal.toStream(start);
 			format = ain.getFormat();
 			outputLine = AudioSystem.getSourceDataLine(format);
 			outputLine.open(format);
@@ -32,12 +38,13 @@ public class Player extends Thread {
 		if (ain == null || outputLine == null)
 			return;
 		outputLine.start();
+		long offset = (long)(start * 1000000.0 / signal.getHertz());
 		byte[] buffer = new byte[format.getFrameSize() * BUFFERED_FRAMES];
 		try {
 			int n;
 			while (window.isPlaying() && (n = ain.read(buffer)) != -1) {
 				outputLine.write(buffer, 0, n);
-				window.updateCursor(outputLine.getMicrosecondPosition());
+				window.updateCursor(offset + outputLine.getMicrosecondPosition());
 			}
 		}
 		catch (IOException ex) {
@@ -0,0 +1,97 @@
+package com.remyoukaour.spectrogram;
+
+import java.nio.ByteBuffer;
+
+public enum SampleFormat {
+	SHORT(2) {
+		public double get(ByteBuffer buffer, int i) {
+			return buffer.getShort(i << 1) * SampledShortData.SCALE;
+		}
+		
+		public void decode(ByteBuffer buffer, int index, double[] dst, int off,
+				int length) {
+			for (int i = index << 1, end = off + length; off < end; off++, i += 2) {
+				dst[off] = buffer.getShort(i) * SampledShortData.SCALE;
+			}
+		}
+		
+		public void encode(double[] src, int off, int length, ByteBuffer buffer,
+				int index) {
+			for (int i = index << 1, end = off + length; off < end; off++, i += 2) {
+				buffer.putShort(i, SampledShortData.toShort(src[off]));
+			}
+		}
+		
+		public WritableSampledData allocate(long length) {
+			return new SampledShortData(length);
+		}
+	},
+	
+	FLOAT(4) {
+		public double get(ByteBuffer buffer, int i) {
+			return buffer.getFloat(i << 2);
+		}
+		
+		public void decode(ByteBuffer buffer, int index, double[] dst, int off,
+				int length) {
+			for (int i = index << 2, end = off + length; off < end; off++, i += 4) {
+				dst[off] = buffer.getFloat(i);
+			}
+		}
+		
+		public void encode(double[] src, int off, int length, ByteBuffer buffer,
+				int index) {
+			for (int i = index << 2, end = off + length; off < end; off++, i += 4) {
+				buffer.putFloat(i, (float)src[off]);
+			}
+		}
+		
+		public WritableSampledData allocate(long length) {
+			return new SampledFloatData(length);
+		}
+	},
+	
+	DOUBLE(8) {
+		public double get(ByteBuffer buffer, int i) {
+			return buffer.getDouble(i << 3);
+		}
+		
+		public void decode(ByteBuffer buffer, int index, double[] dst, int off,
+				int length) {
+			for (int i = index << 3, end = off + length; off < end; off++, i += 8) {
+				dst[off] = buffer.getDouble(i);
+			}
+		}
+		
+		public void encode(double[] src, int off, int length, ByteBuffer buffer,
+				int index) {
+			for (int i = index << 3, end = off + length; off < end; off++, i += 8) {
+				buffer.putDouble(i, src[off]);
+			}
+		}
+		
+		public WritableSampledData allocate(long length) {
+			return new SampledDoubleData(length);
+		}
+	};
+	
+	private final int width;
+	
+	private SampleFormat(int width) {
+		this.width = width;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public abstract double get(ByteBuffer buffer, int i);
+	
+	public abstract void decode(ByteBuffer buffer, int index, double[] dst, int off,
+			int length);
+	
+	public abstract void encode(double[] src, int off, int length, ByteBuffer buffer,
+			int index);
+	
+	public abstract WritableSampledData allocate(long length);
+}
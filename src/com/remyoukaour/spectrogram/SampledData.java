@@ -1,30 +1,55 @@
 package com.remyoukaour.spectrogram;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 
 public abstract class SampledData {
-	private static final int BUFFERED_SAMPLES = 2048;
+	public abstract long size();
+	public abstract double get(long i);
+	protected abstract void copy(long start, int length, double[] dst, int off);
 	
-	public abstract int size();
-	public abstract double get(int i);
-	public abstract double[] get(int start, int length);
+	public double[] get(long start, int length) {
+		double[] data = new double[length];
+		read(start, length, data, 0);
+		return data;
+	}
+	
+	public void read(long start, int length, double[] dst, int off) {
+		long end = start + length;
+		long from = Math.max(start, 0);
+		long to = Math.min(end, size());
+		if (from >= to) {
+			Arrays.fill(dst, off, off + length, 0.0);
+			return;
+		}
+		// samples outside the signal read as silence
+		int head = (int)(from - start);
+		int count = (int)(to - from);
+		if (head > 0)
+			Arrays.fill(dst, off, off + head, 0.0);
+		copy(from, count, dst, off + head);
+		if (to < end)
+			Arrays.fill(dst, off + head + count, off + length, 0.0);
+	}
+	
+	protected void written(long length) {
+		// called when the first length samples have been stored for good
+	}
+	
+	public void close() throws IOException {
+		// nothing to release by default
+	}
 	
 	public AudioInputStream toStream(int hertz) {
+		return toStream(hertz, 0);
+	}
+	
+	public AudioInputStream toStream(int hertz, long start) {
 		AudioFormat format = new AudioFormat(hertz, 16, 1, true, true);
-		int n = size();
-		byte[] data = new byte[n * 2];
-		int off = 0;
-		for (int i = 0; i < n; i += BUFFERED_SAMPLES) {
-			double[] buffer = get(i, BUFFERED_SAMPLES);
-			for (int j = 0; j < BUFFERED_SAMPLES && i + j < n; j++, off += 2) {
-				double v = buffer[j] * 32768.0;
-				short s = v > Short.MAX_VALUE ? Short.MAX_VALUE :
-						v < Short.MIN_VALUE ? Short.MIN_VALUE : (short)v;
-				ByteUtils.shortToBytes(s, true, data, off);
-			}
-		}
-		return new AudioInputStream(new ByteArrayInputStream(data), format, n);
+		long n = Math.max(0, size() - start);
+		return new AudioInputStream(new SampledDataInputStream(this, start),
+				format, n);
 	}
 }
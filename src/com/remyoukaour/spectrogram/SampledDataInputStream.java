@@ -0,0 +1,74 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.InputStream;
+
+public class SampledDataInputStream extends InputStream {
+	private static final int BUFFERED_SAMPLES = 2048;
+	private static final int WIDTH = 2;
+	
+	private final SampledData data;
+	private final double[] samples;
+	private final byte[] bytes;
+	private long position;
+	private int offset, limit;
+	
+	public SampledDataInputStream(SampledData data, long start) {
+		this.data = data;
+		this.samples = new double[BUFFERED_SAMPLES];
+		this.bytes = new byte[BUFFERED_SAMPLES * WIDTH];
+		this.position = Math.max(0, Math.min(start, data.size()));
+		this.offset = 0;
+		this.limit = 0;
+	}
+	
+	private boolean fill() {
+		int n = (int)Math.min(BUFFERED_SAMPLES, data.size() - position);
+		if (n <= 0)
+			return false;
+		data.read(position, n, samples, 0);
+		for (int i = 0, off = 0; i < n; i++, off += WIDTH) {
+			double v = samples[i] * 32768.0;
+			short s = v > Short.MAX_VALUE ? Short.MAX_VALUE :
+					v < Short.MIN_VALUE ? Short.MIN_VALUE : (short)v;
+			ByteUtils.shortToBytes(s, true, bytes, off);
+		}
+		position += n;
+		offset = 0;
+		limit = n * WIDTH;
+		return true;
+	}
+	
+	public int read() {
+		if (offset >= limit && !fill())
+			return -1;
+		return bytes[offset++] & 0xFF;
+	}
+	
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (offset >= limit && !fill())
+			return -1;
+		int n = Math.min(len, limit - offset);
+		System.arraycopy(bytes, offset, b, off, n);
+		offset += n;
+		return n;
+	}
+	
+	public long skip(long n) {
+		long skipped = Math.min(n, limit - offset);
+		offset += skipped;
+		n -= skipped;
+		if (n > 0) {
+			// skip whole samples without converting them
+			long samples = Math.min(n / WIDTH, data.size() - position);
+			position += samples;
+			skipped += samples * WIDTH;
+		}
+		return skipped;
+	}
+	
+	public int available() {
+		return limit - offset;
+	}
+}
@@ -2,6 +2,7 @@ package com.remyoukaour.spectrogram;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -10,85 +11,92 @@ public class SampledDiskData extends SampledData {
 	private static final int BLOCK_SIZE = 2048;
 	
 	private final RandomAccessFile raf;
-	private final int size;
+	private final long offset;
+	private final long size;
+	private final SampleFormat format;
 	private final Map<Integer, double[]> cache;
+	private volatile long complete;
+	private boolean closed = false;
 	
-	public SampledDiskData(RandomAccessFile raf, int size) {
+	public SampledDiskData(RandomAccessFile raf, long size, SampleFormat format) {
+		this(raf, 0, size, format);
+	}
+	
+	public SampledDiskData(RandomAccessFile raf, long offset, long size,
+			SampleFormat format) {
 		this.raf = raf;
+		this.offset = offset;
 		this.size = size;
+		this.format = format;
+		this.complete = size;
 		this.cache = new LinkedHashMap<Integer, double[]>(CAPACITY + 1, 1.1f, true) {
 			private static final long serialVersionUID = 865438240L;
-
-			@SuppressWarnings("unused")
-			protected boolean removeEldestEntry(Integer eldest) {
+			
+			protected boolean removeEldestEntry(Map.Entry<Integer, double[]> eldest) {
 				return size() > CAPACITY;
 			}
 		};
 	}
 	
-	public int size() {
+	public long size() {
 		return size;
 	}
 	
-	public double get(int i) {
-		try {
-			raf.seek(i);
-			return raf.readDouble();
-		}
-		catch (IOException ex) {
-			return 0.0;
-		}
+	public double get(long i) {
+		return getBlock((int)(i / BLOCK_SIZE))[(int)(i % BLOCK_SIZE)];
 	}
 	
-	public double[] get(int start, int length) {
-		double[] data = new double[length];
-		if (start < 0) {
-			length += start;
-			start = 0;
-		}
-		if (start + length > size) {
-			length = size - start;
-		}
-		int blockIndex = start / BLOCK_SIZE;
-		int indexIntoBlock = start % BLOCK_SIZE;
-		double[] block = getBlock(blockIndex);
-		int lengthInBlock = BLOCK_SIZE - indexIntoBlock;
-		if (lengthInBlock < length && size > length) {
-			System.arraycopy(block, indexIntoBlock, data, 0, lengthInBlock);
-			int restLength = length - lengthInBlock;
-			double[] rest = get(start + lengthInBlock, restLength);
-			System.arraycopy(rest, 0, data, lengthInBlock, restLength);
+	protected void copy(long start, int length, double[] dst, int off) {
+		while (length > 0) {
+			int indexIntoBlock = (int)(start % BLOCK_SIZE);
+			int n = Math.min(length, BLOCK_SIZE - indexIntoBlock);
+			double[] block = getBlock((int)(start / BLOCK_SIZE));
+			System.arraycopy(block, indexIntoBlock, dst, off, n);
+			start += n;
+			off += n;
+			length -= n;
 		}
-		else {
-			System.arraycopy(block, indexIntoBlock, data, 0, length);
-		}
-		return data;
 	}
 	
-	private double[] getBlock(int blockIndex) {
+	protected void written(long length) {
+		this.complete = length;
+	}
+	
+	public synchronized void close() throws IOException {
+		closed = true;
+		cache.clear();
+		raf.close();
+	}
+	
+	private synchronized double[] getBlock(int blockIndex) {
 		double[] block = cache.get(blockIndex);
-		if (block != null)
+		if (block != null) {
+			Metrics.BLOCK_HITS.increment();
 			return block;
+		}
+		// tiles and summaries still being made when the signal is replaced
+		// read silence instead of the closed file
+		if (closed)
+			return new double[BLOCK_SIZE];
+		Metrics.BLOCK_MISSES.increment();
+		long timing = Metrics.BLOCK_READ_TIME.start();
 		block = new double[BLOCK_SIZE];
 		try {
-			int start = blockIndex * BLOCK_SIZE;
-			int n = BLOCK_SIZE;
-			if (start + n >= size) {
-				n = size - start;
-			}
-			int width = 8;
-			n *= width;
-			byte[] bytes = new byte[n];
-			raf.seek(start * width);
+			long start = (long)blockIndex * BLOCK_SIZE;
+			int n = (int)Math.min(BLOCK_SIZE, size - start);
+			int width = format.getWidth();
+			byte[] bytes = new byte[n * width];
+			raf.seek(offset + start * width);
 			raf.readFully(bytes);
-			for (int i = 0, j = 0; j < n; i++, j += width) {
-				block[i] = ByteUtils.bytesToDouble(bytes, j);
-			}
+			format.decode(ByteBuffer.wrap(bytes), 0, block, 0, n);
 		}
 		catch (IOException ex) {
 			ex.printStackTrace();
 		}
-		cache.put(blockIndex, block);
+		Metrics.BLOCK_READ_TIME.stop(timing);
+		// blocks that are still being written must be read again later
+		if ((long)(blockIndex + 1) * BLOCK_SIZE <= complete || complete == size)
+			cache.put(blockIndex, block);
 		return block;
 	}
 }
@@ -0,0 +1,53 @@
+package com.remyoukaour.spectrogram;
+
+public class SampledFloatData extends WritableSampledData {
+	private static final int PAGE_SHIFT = 24;
+	private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	
+	private final float[][] pages;
+	private final long size;
+	
+	public SampledFloatData(long size) {
+		this.size = size;
+		int n = (int)((size + PAGE_SIZE - 1) >> PAGE_SHIFT);
+		this.pages = new float[n][];
+		for (int p = 0; p < n; p++) {
+			pages[p] = new float[(int)Math.min(PAGE_SIZE, size - ((long)p << PAGE_SHIFT))];
+		}
+	}
+	
+	public long size() {
+		return size;
+	}
+	
+	public double get(long i) {
+		return pages[(int)(i >> PAGE_SHIFT)][(int)i & PAGE_MASK];
+	}
+	
+	protected void copy(long start, int length, double[] dst, int off) {
+		while (length > 0) {
+			float[] page = pages[(int)(start >> PAGE_SHIFT)];
+			int i = (int)start & PAGE_MASK;
+			int n = Math.min(length, PAGE_SIZE - i);
+			for (int end = off + n; off < end; off++, i++) {
+				dst[off] = page[i];
+			}
+			start += n;
+			length -= n;
+		}
+	}
+	
+	public void set(long start, double[] src, int off, int length) {
+		while (length > 0) {
+			float[] page = pages[(int)(start >> PAGE_SHIFT)];
+			int i = (int)start & PAGE_MASK;
+			int n = Math.min(length, PAGE_SIZE - i);
+			for (int end = off + n; off < end; off++, i++) {
+				page[i] = (float)src[off];
+			}
+			start += n;
+			length -= n;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SampledMappedData extends SampledData {
+	private static final int CHUNK_SHIFT = 27;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int CLOSED = Integer.MIN_VALUE;
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+	
+	static {
+		// a mapping is otherwise only released when its buffer is collected
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> c = Class.forName("sun.misc.Unsafe");
+			Field f = c.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			unsafe = f.get(null);
+			invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+		}
+		catch (Exception ex) {}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+	
+	private final ByteBuffer[] chunks;
+	private final long size;
+	private final SampleFormat format;
+	// the number of reads in progress, which goes negative once closed
+	private final AtomicInteger readers = new AtomicInteger();
+	
+	public SampledMappedData(FileChannel channel, long size, SampleFormat format)
+			throws IOException {
+		this(channel, 0, size, format);
+	}
+	
+	public SampledMappedData(FileChannel channel, long offset, long size,
+			SampleFormat format) throws IOException {
+		this.size = size;
+		this.format = format;
+		int width = format.getWidth();
+		int n = (int)((size + CHUNK_SIZE - 1) >> CHUNK_SHIFT);
+		this.chunks = new ByteBuffer[n];
+		for (int c = 0; c < n; c++) {
+			long start = (long)c << CHUNK_SHIFT;
+			long length = Math.min(CHUNK_SIZE, size - start);
+			chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+					offset + start * width, length * width);
+		}
+	}
+	
+	public long size() {
+		return size;
+	}
+	
+	public double get(long i) {
+		if (!acquire())
+			return 0.0;
+		try {
+			return format.get(chunks[(int)(i >> CHUNK_SHIFT)], (int)i & CHUNK_MASK);
+		}
+		finally {
+			release();
+		}
+	}
+	
+	protected void copy(long start, int length, double[] dst, int off) {
+		if (!acquire()) {
+			Arrays.fill(dst, off, off + length, 0.0);
+			return;
+		}
+		try {
+			// absolute gets keep concurrent readers independent without
+			// allocating a duplicate view per read
+			while (length > 0) {
+				int i = (int)start & CHUNK_MASK;
+				int n = Math.min(length, CHUNK_SIZE - i);
+				format.decode(chunks[(int)(start >> CHUNK_SHIFT)], i, dst, off, n);
+				start += n;
+				off += n;
+				length -= n;
+			}
+		}
+		finally {
+			release();
+		}
+	}
+	
+	public void close() throws IOException {
+		// an unmapped buffer must never be read, so the last read in
+		// progress unmaps it instead
+		while (true) {
+			int n = readers.get();
+			if (n < 0)
+				return;
+			if (readers.compareAndSet(n, n | CLOSED)) {
+				if (n == 0)
+					unmap();
+				return;
+			}
+		}
+	}
+	
+	private boolean acquire() {
+		while (true) {
+			int n = readers.get();
+			if (n < 0)
+				return false;
+			if (readers.compareAndSet(n, n + 1))
+				return true;
+		}
+	}
+	
+	private void release() {
+		if (readers.decrementAndGet() == CLOSED)
+			unmap();
+	}
+	
+	private void unmap() {
+		for (int c = 0; c < chunks.length; c++) {
+			ByteBuffer chunk = chunks[c];
+			chunks[c] = null;
+			if (chunk != null && INVOKE_CLEANER != null) {
+				try {
+					INVOKE_CLEANER.invoke(UNSAFE, chunk);
+				}
+				catch (Exception ex) {}
+			}
+		}
+	}
+}
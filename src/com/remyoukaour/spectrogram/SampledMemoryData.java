@@ -1,30 +1,25 @@
 package com.remyoukaour.spectrogram;
 
-public class SampledMemoryData extends SampledData {
+public class SampledMemoryData extends WritableSampledData {
 	private final double[] samples;
 	
 	public SampledMemoryData(double[] samples) {
 		this.samples = samples;
 	}
 	
-	public int size() {
+	public long size() {
 		return samples.length;
 	}
 	
-	public double get(int i) {
-		return samples[i];
+	public double get(long i) {
+		return samples[(int)i];
 	}
 	
-	public double[] get(int start, int length) {
-		double[] data = new double[length];
-		if (start < 0) {
-			length += start;
-			start = 0;
-		}
-		if (start + length > samples.length) {
-			length = samples.length - start;
-		}
-		System.arraycopy(samples, start, data, 0, length);
-		return data;
+	protected void copy(long start, int length, double[] dst, int off) {
+		System.arraycopy(samples, (int)start, dst, off, length);
+	}
+	
+	public void set(long start, double[] src, int off, int length) {
+		System.arraycopy(src, off, samples, (int)start, length);
 	}
 }
@@ -0,0 +1,185 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SampledMp3Data extends SampledData {
+	private final Blocks blocks;
+	private final int channel;
+	
+	private SampledMp3Data(Blocks blocks, int channel) {
+		this.blocks = blocks;
+		this.channel = channel;
+	}
+	
+	public static SampledData[] open(File file, Mp3Index index) {
+		// the channels share their decoders and one cache, since every frame
+		// decodes all of them at once
+		Blocks blocks = new Blocks(file, index);
+		SampledData[] channels = new SampledData[index.getChannels()];
+		for (int c = 0; c < channels.length; c++) {
+			channels[c] = new SampledMp3Data(blocks, c);
+		}
+		return channels;
+	}
+	
+	public long size() {
+		return blocks.size;
+	}
+	
+	public double get(long i) {
+		int size = blocks.blockSize;
+		return blocks.get((int)(i / size))[channel][(int)(i % size)];
+	}
+	
+	protected void copy(long start, int length, double[] dst, int off) {
+		int size = blocks.blockSize;
+		while (length > 0) {
+			int indexIntoBlock = (int)(start % size);
+			int n = Math.min(length, size - indexIntoBlock);
+			float[] block = blocks.get((int)(start / size))[channel];
+			for (int i = 0; i < n; i++) {
+				dst[off + i] = block[indexIntoBlock + i];
+			}
+			start += n;
+			off += n;
+			length -= n;
+		}
+	}
+	
+	public void close() throws IOException {
+		blocks.close();
+	}
+	
+	private static class Blocks {
+		private static final int CAPACITY = 32;
+		private static final int BLOCK_FRAMES = 32;
+		private static final int DECODERS = Runtime.getRuntime().availableProcessors();
+		
+		private final File file;
+		private final Mp3Index index;
+		private final long size;
+		private final int blockSize;
+		private final Map<Integer, float[][]> cache;
+		// decoders not in use, so each thread decodes with its own
+		private final Deque<Mp3Decoder> idle = new ArrayDeque<Mp3Decoder>();
+		private boolean closed = false;
+		
+		public Blocks(File file, Mp3Index index) {
+			this.file = file;
+			this.index = index;
+			this.size = index.getLength();
+			this.blockSize = BLOCK_FRAMES * index.getSamplesPerFrame();
+			this.cache = new LinkedHashMap<Integer, float[][]>(CAPACITY + 1, 1.1f, true) {
+				private static final long serialVersionUID = 3141043277L;
+				
+				protected boolean removeEldestEntry(Map.Entry<Integer, float[][]> eldest) {
+					return size() > CAPACITY;
+				}
+			};
+		}
+		
+		public float[][] get(int blockIndex) {
+			int first = blockIndex * BLOCK_FRAMES;
+			Mp3Decoder decoder;
+			synchronized (this) {
+				float[][] block = cache.get(blockIndex);
+				if (block != null) {
+					Metrics.BLOCK_HITS.increment();
+					return block;
+				}
+				if (closed)
+					return new float[index.getChannels()][blockSize];
+				decoder = take(first);
+			}
+			// no lock is held while decoding, so threads missing different
+			// blocks decode them side by side
+			Metrics.BLOCK_MISSES.increment();
+			long timing = Metrics.BLOCK_READ_TIME.start();
+			float[][] block = decode(decoder, first);
+			Metrics.BLOCK_READ_TIME.stop(timing);
+			synchronized (this) {
+				// a decoder that failed has already been closed
+				if (block != null) {
+					cache.put(blockIndex, block);
+					release(decoder);
+				}
+			}
+			return block != null ? block : new float[index.getChannels()][blockSize];
+		}
+		
+		private float[][] decode(Mp3Decoder decoder, int first) {
+			int channels = index.getChannels();
+			int samplesPerFrame = index.getSamplesPerFrame();
+			int last = Math.min(first + BLOCK_FRAMES, index.getFrameCount());
+			float[][] block = new float[channels][blockSize];
+			double[][] buffers = new double[channels][samplesPerFrame];
+			try {
+				// reading on from the previous block needs no preroll
+				if (decoder.getFrame() != first)
+					decoder.seek(Math.max(0, first - Mp3Decoder.PREROLL_FRAMES));
+				for (int f = decoder.getFrame(); f < last; f++) {
+					int n = decoder.read(buffers);
+					if (n < 0)
+						break;
+					if (f < first)
+						continue;
+					int off = (f - first) * samplesPerFrame;
+					for (int c = 0; c < channels; c++) {
+						for (int i = 0; i < n; i++) {
+							block[c][off + i] = (float)buffers[c][i];
+						}
+					}
+				}
+				return block;
+			}
+			catch (IOException ex) {
+				ex.printStackTrace();
+				closeQuietly(decoder);
+				return null;
+			}
+		}
+		
+		private Mp3Decoder take(int frame) {
+			// a decoder that stopped where this block starts can carry on
+			for (Iterator<Mp3Decoder> it = idle.iterator(); it.hasNext(); ) {
+				Mp3Decoder decoder = it.next();
+				if (decoder.getFrame() == frame) {
+					it.remove();
+					return decoder;
+				}
+			}
+			Mp3Decoder decoder = idle.pollLast();
+			return decoder != null ? decoder : new Mp3Decoder(file, index);
+		}
+		
+		private void release(Mp3Decoder decoder) {
+			if (closed || idle.size() >= DECODERS)
+				closeQuietly(decoder);
+			else
+				idle.addLast(decoder);
+		}
+		
+		private static void closeQuietly(Mp3Decoder decoder) {
+			try {
+				decoder.close();
+			}
+			catch (IOException ex) {}
+		}
+		
+		public synchronized void close() throws IOException {
+			// decoders still in use are closed when they are released
+			closed = true;
+			cache.clear();
+			for (Mp3Decoder decoder : idle) {
+				decoder.close();
+			}
+			idle.clear();
+		}
+	}
+}
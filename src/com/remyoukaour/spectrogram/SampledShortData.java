@@ -0,0 +1,59 @@
+package com.remyoukaour.spectrogram;
+
+public class SampledShortData extends WritableSampledData {
+	public static final double SCALE = 1.0 / 32768;
+	private static final int PAGE_SHIFT = 24;
+	private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	
+	private final short[][] pages;
+	private final long size;
+	
+	public SampledShortData(long size) {
+		this.size = size;
+		int n = (int)((size + PAGE_SIZE - 1) >> PAGE_SHIFT);
+		this.pages = new short[n][];
+		for (int p = 0; p < n; p++) {
+			pages[p] = new short[(int)Math.min(PAGE_SIZE, size - ((long)p << PAGE_SHIFT))];
+		}
+	}
+	
+	public static short toShort(double v) {
+		long s = Math.round(v * 32768);
+		return (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, s));
+	}
+	
+	public long size() {
+		return size;
+	}
+	
+	public double get(long i) {
+		return pages[(int)(i >> PAGE_SHIFT)][(int)i & PAGE_MASK] * SCALE;
+	}
+	
+	protected void copy(long start, int length, double[] dst, int off) {
+		while (length > 0) {
+			short[] page = pages[(int)(start >> PAGE_SHIFT)];
+			int i = (int)start & PAGE_MASK;
+			int n = Math.min(length, PAGE_SIZE - i);
+			for (int end = off + n; off < end; off++, i++) {
+				dst[off] = page[i] * SCALE;
+			}
+			start += n;
+			length -= n;
+		}
+	}
+	
+	public void set(long start, double[] src, int off, int length) {
+		while (length > 0) {
+			short[] page = pages[(int)(start >> PAGE_SHIFT)];
+			int i = (int)start & PAGE_MASK;
+			int n = Math.min(length, PAGE_SIZE - i);
+			for (int end = off + n; off < end; off++, i++) {
+				page[i] = toShort(src[off]);
+			}
+			start += n;
+			length -= n;
+		}
+	}
+}
@@ -2,106 +2,181 @@ package com.remyoukaour.spectrogram;
 
 import java.awt.Component;
 import java.io.*;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.sound.sampled.*;
 import javax.swing.*;
 
 public class Signal {
+	public static final int MIX = -1;
 	private static final int BUFFERED_DOUBLES = 2048;
-
+	
 	private final String name;
+	private final SampledData[] channels;
 	private final SampledData samples;
+	private final WaveformSummary summary;
 	private final int hertz;
-
-	public static Signal fromFile(Component parent, File f, boolean useMemory)
+	private final File temp;
+	private final FutureTask<Void> summarizer;
+	private final AtomicBoolean summarizing = new AtomicBoolean();
+	
+	public static Signal fromFile(File f, StorageMode storage)
+			throws UnsupportedAudioFileException, IOException {
+		return fromFile(f, storage, null);
+	}
+	
+	public static Signal fromFile(File f, StorageMode storage, AnalysisCache cache)
 			throws UnsupportedAudioFileException, IOException {
-		String name = f.getName();
-		SignalIterator iter = new SignalIterator(f);
-		int length = iter.getRemaining();
-		int hertz = iter.getHertz();
-		boolean decoded = iter.isDecoded();
-		ProgressMonitor monitor = null;
-		if (decoded) {
-			monitor = new IndeterminateProgressMonitor(parent,
+		SignalLoader loader = new SignalLoader(f, storage, cache);
+		loader.load(null);
+		return loader.getSignal();
+	}
+	
+	public static Signal fromFile(Component parent, File f, StorageMode storage)
+			throws UnsupportedAudioFileException, IOException {
+		SignalLoader loader = new SignalLoader(f, storage);
+		ProgressMonitor monitor = getMonitor(parent, loader);
+		loader.load(monitor);
+		if (monitor != null)
+			monitor.close();
+		return loader.getSignal();
+	}
+	
+	public static ProgressMonitor getMonitor(Component parent, SignalLoader loader) {
+		if (loader.isDone())
+			return null;
+		String name = loader.getSignal().getName();
+		if (loader.isDecoded()) {
+			return new IndeterminateProgressMonitor(parent,
 					"Loading " + name + "...", null);
 		}
-		else {
-			ProgressMonitorInputStream pin = (ProgressMonitorInputStream)
-					iter.getStream(parent, "Loading " + name + "...");
-			monitor = pin.getProgressMonitor();
-			monitor.setMillisToDecideToPopup(250);
-			monitor.setMillisToPopup(250);
-		}
-		SampledData data = null;
-		if (useMemory) {
-			double[] samples = new double[length];
-			for (int i = 0; i < length; i++) {
-				Double v = iter.next();
-				if (v == null || monitor.isCanceled())
-					throw new IOException("failed to read sample");
-				samples[i] = v;
-			}
-			iter.close();
-			data = new SampledMemoryData(samples);
-		}
-		else {
-			File temp = File.createTempFile("signal_" + name, null);
-			temp.deleteOnExit();
-			int width = 8;
-			BufferedRandomAccessFile braf = new BufferedRandomAccessFile(temp,
-					"rw", width * BUFFERED_DOUBLES);
-			byte[] bytes = new byte[width];
-			for (int i = 0; i < length; i++) {
-				Double v = iter.next();
-				if (v == null || monitor.isCanceled()) {
-					braf.close();
-					throw new IOException("failed to read sample");
-				}
-				ByteUtils.doubleToBytes(v, bytes, 0);
-				braf.writeBuffered(bytes);
-			}
-			braf.flushBuffer();
-			braf.close();
-			iter.close();
-			RandomAccessFile raf = new RandomAccessFile(temp, "r");
-			data = new SampledDiskData(raf, length);
-		}
-		monitor.close();
-		return new Signal(name, data, hertz);
+		SignalIterator iter = loader.getIterator();
+		ProgressMonitorInputStream pin = (ProgressMonitorInputStream)
+				iter.getStream(parent, "Loading " + name + "...");
+		ProgressMonitor monitor = pin.getProgressMonitor();
+		monitor.setMillisToDecideToPopup(250);
+		monitor.setMillisToPopup(250);
+		return monitor;
 	}
-
+	
 	protected Signal(String name, SampledData samples, int hertz) {
+		this(name, samples, WaveformSummary.fromData(samples, BUFFERED_DOUBLES),
+				hertz, null);
+	}
+	
+	protected Signal(String name, SampledData samples, WaveformSummary summary,
+			int hertz, File temp) {
+		this(name, new SampledData[] {samples}, summary, hertz, temp);
+	}
+	
+	protected Signal(String name, SampledData[] channels, WaveformSummary summary,
+			int hertz, File temp) {
+		this(name, channels, summary, hertz, temp, null);
+	}
+	
+	protected Signal(String name, SampledData[] channels, WaveformSummary summary,
+			int hertz, File temp, Runnable summarizer) {
 		this.name = name;
-		this.samples = samples;
+		this.channels = channels;
+		// the mix is averaged as it is read instead of being stored
+		this.samples = channels.length == 1 ? channels[0] : new MixedData(channels);
+		this.summary = summary;
 		this.hertz = hertz;
+		this.temp = temp;
+		this.summarizer = summarizer != null ? new FutureTask<Void>(summarizer, null) : null;
 	}
-
+	
 	public String getName() {
 		return name;
 	}
-
+	
 	public int getHertz() {
 		return hertz;
 	}
-
-	public int getNumSamples() {
+	
+	public long getNumSamples() {
 		return samples.size();
 	}
-
-	public double[] getSamples(int start, int length) {
+	
+	public int getNumChannels() {
+		return channels.length;
+	}
+	
+	public WaveformSummary getSummary() {
+		// a summary that needs its own pass over the samples is only filled
+		// in once something asks for it
+		if (summarizer != null && !summarizing.get() &&
+				summarizing.compareAndSet(false, true)) {
+			Thread thread = new Thread(summarizer, "Summary of " + name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return summary;
+	}
+	
+	public double[] getSamples(long start, int length) {
 		return samples.get(start, length);
 	}
-
-	public Spectrum getSpectrum(int i, int length) {
+	
+	public void readSamples(long start, int length, double[] dst, int off) {
+		samples.read(start, length, dst, off);
+	}
+	
+	public void readSamples(int channel, long start, int length, double[] dst,
+			int off) {
+		SampledData data = channel == MIX ? samples : channels[channel];
+		data.read(start, length, dst, off);
+	}
+	
+	public Spectrum getSpectrum(long i, int length) {
 		return getSpectrum(i, length, null, false);
 	}
-
-	public Spectrum getSpectrum(int i, int length, WindowFunction window,
+	
+	public Spectrum getSpectrum(long i, int length, WindowFunction window,
 			boolean showPhase) {
 		double[] samples = getSamples(i - length, length * 2);
 		return new Spectrum(samples, i, window, showPhase);
 	}
-
+	
+	public void readSpectrum(long i, int bins, WindowFunction window,
+			boolean showPhase, double[] out) {
+		readSpectrum(i, bins, window, showPhase, FFTCache.getBuffer(bins * 2), out);
+	}
+	
+	public void readSpectrum(long i, int bins, WindowFunction window,
+			boolean showPhase, double[] frame, double[] out) {
+		readSpectrum(MIX, i, bins, window, showPhase, frame, out);
+	}
+	
+	public void readSpectrum(int channel, long i, int bins, WindowFunction window,
+			boolean showPhase, double[] out) {
+		readSpectrum(channel, i, bins, window, showPhase,
+				FFTCache.getBuffer(bins * 2), out);
+	}
+	
+	public void readSpectrum(int channel, long i, int bins, WindowFunction window,
+			boolean showPhase, double[] frame, double[] out) {
+		SampledData data = channel == MIX ? samples : channels[channel];
+		data.read(i - bins, bins * 2, frame, 0);
+		if (window != null)
+			window.window(frame);
+		Spectrum.compute(frame, showPhase, out);
+		Metrics.SPECTRA.increment();
+	}
+	
 	public AudioInputStream toStream() {
 		return samples.toStream(hertz);
 	}
+	
+	public AudioInputStream toStream(long start) {
+		return samples.toStream(hertz, start);
+	}
+	
+	public void close() throws IOException {
+		if (summarizer != null)
+			summarizer.cancel(true);
+		samples.close();
+		if (temp != null)
+			temp.delete();
+	}
 }
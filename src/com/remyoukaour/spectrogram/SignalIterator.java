@@ -2,10 +2,12 @@ package com.remyoukaour.spectrogram;
 
 import java.awt.Component;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Iterator;
 import javax.sound.sampled.*;
 import javax.swing.ProgressMonitorInputStream;
-import org.kc7bfi.jflac.sound.spi.*;
+import org.jflac.sound.spi.*;
 import org.tritonus.share.sampled.file.TAudioFileFormat;
 
 public class SignalIterator implements Iterator<Double> {
@@ -15,11 +17,14 @@ public class SignalIterator implements Iterator<Double> {
 	private final boolean decoded;
 	private final int hertz;
 	private final int channels;
-	private final int bytesPerSample;
-	private final boolean bigEndian;
-	private final double maxSample;
+	private final PcmDecoder decoder;
+	private final int bytesPerFrame;
 	private final byte[] buffer;
-	private int remaining;
+	private final ByteBuffer bytes;
+	private final double[] samples;
+	private final double[] single;
+	private int buffered;
+	private long remaining;
 	
 	public SignalIterator(File f) throws UnsupportedAudioFileException, IOException {		
 		AudioInputStream ain;
@@ -38,6 +43,8 @@ public class SignalIterator implements Iterator<Double> {
 		}
 		long length = -1;
 		if (fileFormat instanceof TAudioFileFormat) {
+			// compressed streams are only decoded through a conversion, so
+			// ask for the 16-bit output the decoders produce natively
 			AudioFormat newFormat = new AudioFormat(format.getSampleRate(), 16,
 					format.getChannels(), true, false);
 			ain = AudioSystem.getAudioInputStream(newFormat, ain);
@@ -61,22 +68,18 @@ public class SignalIterator implements Iterator<Double> {
 		}
 		if (length <= 0)
 			throw new IllegalArgumentException("Too short");
-		if (length > Integer.MAX_VALUE)
-			throw new IllegalArgumentException("Too long");
-		AudioFormat.Encoding encoding = format.getEncoding();
-		if (encoding != AudioFormat.Encoding.PCM_SIGNED)
-			throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+		this.decoder = PcmDecoder.forFormat(format);
 		this.hertz = (int)format.getSampleRate();
 		this.channels = format.getChannels();
-		int bytesPerFrame = format.getFrameSize();
-		this.bytesPerSample = bytesPerFrame / channels;
-		if (bytesPerSample != 2)
-			throw new IllegalArgumentException("16-bit samples required");
-		this.bigEndian = format.isBigEndian();
+		this.bytesPerFrame = format.getFrameSize();
 		this.in = new BufferedInputStream(ain, bytesPerFrame * BUFFERED_FRAMES);
-		this.maxSample = Math.pow(2, bytesPerSample * 8 - 1);
-		this.buffer = new byte[bytesPerFrame];
-		this.remaining = (int)length;
+		this.buffer = new byte[bytesPerFrame * BUFFERED_FRAMES];
+		this.bytes = ByteBuffer.wrap(buffer).order(format.isBigEndian() ?
+				ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		this.samples = new double[channels * BUFFERED_FRAMES];
+		this.single = new double[1];
+		this.buffered = 0;
+		this.remaining = length;
 	}
 	
 	public boolean isDecoded() {
@@ -97,7 +100,16 @@ public class SignalIterator implements Iterator<Double> {
 		return hertz;
 	}
 	
-	public int getRemaining() {
+	public int getChannels() {
+		return channels;
+	}
+	
+	public SampleFormat getSampleFormat() {
+		// channels are kept apart, so each one keeps its source resolution
+		return decoder.getSampleFormat();
+	}
+	
+	public long getRemaining() {
 		return remaining;
 	}
 	
@@ -113,19 +125,84 @@ public class SignalIterator implements Iterator<Double> {
 	@Override
 	public Double next() {
 		try {
-			in.read(buffer);
+			if (read(single, 0, 1) < 1)
+				return null;
 		}
 		catch (IOException ex) {
 			return null;
 		}
-		double v = 0.0;
-		for (int j = 0; j < channels; j++) {
-			short s = ByteUtils.bytesToShort(buffer, j * bytesPerSample, bigEndian);
-			v += s / maxSample;
+		return single[0];
+	}
+	
+	public int read(double[] dst, int off, int len) throws IOException {
+		return read(dst, null, off, len);
+	}
+	
+	public int read(double[][] dst, int off, int len) throws IOException {
+		return read(null, dst, off, len);
+	}
+	
+	private int read(double[] mono, double[][] planar, int off, int len)
+			throws IOException {
+		if (remaining <= 0)
+			return -1;
+		len = (int)Math.min(len, remaining);
+		int frames = 0;
+		while (frames < len) {
+			int want = Math.min(len - frames, BUFFERED_FRAMES) * bytesPerFrame;
+			// short reads may split a frame, so keep any partial frame
+			// bytes at the front of the buffer for the next pass
+			while (buffered < want) {
+				int n = in.read(buffer, buffered, want - buffered);
+				if (n < 0)
+					break;
+				buffered += n;
+			}
+			int complete = buffered / bytesPerFrame;
+			if (complete == 0)
+				break;
+			if (mono != null)
+				decode(complete, mono, off + frames);
+			else
+				decode(complete, planar, off + frames);
+			int used = complete * bytesPerFrame;
+			buffered -= used;
+			System.arraycopy(buffer, used, buffer, 0, buffered);
+			frames += complete;
+			if (complete * bytesPerFrame < want)
+				break;
+		}
+		remaining -= frames;
+		if (frames == 0) {
+			remaining = 0;
+			return -1;
+		}
+		return frames;
+	}
+	
+	private void decode(int frames, double[] dst, int off) {
+		decoder.decode(bytes, frames * channels, samples);
+		if (channels == 1) {
+			System.arraycopy(samples, 0, dst, off, frames);
+			return;
+		}
+		double scale = 1.0 / channels;
+		for (int f = 0, k = 0; f < frames; f++) {
+			double v = 0.0;
+			for (int j = 0; j < channels; j++, k++) {
+				v += samples[k];
+			}
+			dst[off + f] = v * scale;
+		}
+	}
+	
+	private void decode(int frames, double[][] dst, int off) {
+		decoder.decode(bytes, frames * channels, samples);
+		for (int f = 0, k = 0; f < frames; f++) {
+			for (int j = 0; j < channels; j++, k++) {
+				dst[j][off + f] = samples[k];
+			}
 		}
-		v /= channels;
-		remaining--;
-		return v;
 	}
 
 	@Override
@@ -0,0 +1,360 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import javax.swing.ProgressMonitor;
+
+public class SignalLoader {
+	private static final int BUFFERED_DOUBLES = 2048;
+	private static final int SEGMENT_FRAMES = 2048;
+	private static final int PROGRESS_INTERVAL = 100;
+	private static final ForkJoinPool DECODE_POOL = new ForkJoinPool();
+	
+	private final File file;
+	private final SignalIterator iter;
+	private final Mp3Index index;
+	private final long length;
+	private final int channels;
+	private final int hertz;
+	private final SampleFormat format;
+	private final WritableSampledData[] memory;
+	private final RandomAccessFile out;
+	private final FileChannel channel;
+	private final File temp;
+	private final SampledData[] backends;
+	private final GrowingData[] data;
+	private final WaveformSummary summary;
+	private final Signal signal;
+	private final AnalysisCache cache;
+	private final String key;
+	
+	public SignalLoader(File f, StorageMode storage)
+			throws UnsupportedAudioFileException, IOException {
+		this(f, storage, null);
+	}
+	
+	public SignalLoader(File f, StorageMode storage, AnalysisCache cache)
+			throws UnsupportedAudioFileException, IOException {
+		String name = f.getName();
+		String key = cache != null ? cache.getKey(f) : null;
+		Signal cached = key != null ? cache.open(key, f, storage) : null;
+		this.file = f;
+		if (cached != null) {
+			// nothing left to decode
+			this.iter = null;
+			this.index = null;
+			this.length = cached.getNumSamples();
+			this.channels = cached.getNumChannels();
+			this.hertz = cached.getHertz();
+			this.format = null;
+			this.memory = null;
+			this.out = null;
+			this.channel = null;
+			this.temp = null;
+			this.backends = null;
+			this.data = null;
+			this.summary = cached.getSummary();
+			this.signal = cached;
+			this.cache = null;
+			this.key = null;
+			return;
+		}
+		// MP3 frames can be found without decoding, so their segments are
+		// decoded side by side; anything else is read in one pass
+		this.index = Mp3Index.isMp3(f) ? Mp3Index.scan(f) : null;
+		if (index != null) {
+			this.iter = null;
+			this.length = index.getLength();
+			this.channels = index.getChannels();
+			this.hertz = index.getHertz();
+			this.format = SampleFormat.SHORT;
+		}
+		else {
+			this.iter = new SignalIterator(f);
+			this.length = iter.getRemaining();
+			this.channels = iter.getChannels();
+			this.hertz = iter.getHertz();
+			this.format = iter.getSampleFormat();
+		}
+		if (index != null && storage == StorageMode.DISK) {
+			// frames are decoded whenever they are read, so every sample is
+			// available already and only the summary needs a pass, which
+			// waits until something asks for it
+			this.cache = cache;
+			this.key = key;
+			this.memory = null;
+			this.out = null;
+			this.channel = null;
+			this.temp = null;
+			this.backends = SampledMp3Data.open(f, index);
+			this.data = null;
+			this.summary = new WaveformSummary(length);
+			this.signal = new Signal(name, backends, summary, hertz, null,
+					new Runnable() {
+				public void run() {
+					summarize();
+				}
+			});
+			return;
+		}
+		this.data = new GrowingData[channels];
+		if (storage == StorageMode.MEMORY) {
+			this.cache = cache;
+			this.key = key;
+			this.memory = new WritableSampledData[channels];
+			this.out = null;
+			this.channel = null;
+			this.temp = null;
+			this.backends = new SampledData[channels];
+			for (int c = 0; c < channels; c++) {
+				memory[c] = format.allocate(length);
+				backends[c] = memory[c];
+			}
+		}
+		else {
+			this.cache = cache;
+			this.key = key;
+			// decoded straight into the cache so that storing it is a rename
+			if (cache != null) {
+				this.temp = cache.createPending(key);
+			}
+			else {
+				this.temp = File.createTempFile("signal_" + name, null);
+				temp.deleteOnExit();
+			}
+			this.memory = null;
+			this.out = new RandomAccessFile(temp, "rw");
+			this.channel = out.getChannel();
+			// sized up front so that readers can map or seek anywhere;
+			// each channel is stored whole, one after another
+			long bytes = length * format.getWidth();
+			out.setLength(bytes * channels);
+			this.backends = new SampledData[channels];
+			for (int c = 0; c < channels; c++) {
+				RandomAccessFile raf = new RandomAccessFile(temp, "r");
+				if (storage == StorageMode.MAPPED) {
+					backends[c] = new SampledMappedData(raf.getChannel(), bytes * c,
+							length, format);
+					raf.close();
+				}
+				else {
+					backends[c] = new SampledDiskData(raf, bytes * c, length, format);
+				}
+			}
+		}
+		for (int c = 0; c < channels; c++) {
+			data[c] = new GrowingData(backends[c]);
+		}
+		this.summary = new WaveformSummary(length);
+		this.signal = new Signal(name, data, summary, hertz, temp);
+	}
+	
+	public Signal getSignal() {
+		return signal;
+	}
+	
+	public SignalIterator getIterator() {
+		return iter;
+	}
+	
+	public boolean isDone() {
+		return data == null || data[channels - 1].isComplete();
+	}
+	
+	public boolean isDecoded() {
+		return index != null || (iter != null && iter.isDecoded());
+	}
+	
+	public void load(ProgressMonitor monitor) throws IOException {
+		if (data == null)
+			return;
+		try {
+			// nothing counts as stored until it has been written
+			grow(0);
+			if (index != null)
+				loadSegments(monitor);
+			else
+				loadStream(monitor);
+			// a stream that ends early leaves the rest of the signal silent
+			summary.finish();
+			grow(length);
+		}
+		finally {
+			if (iter != null)
+				iter.close();
+			if (out != null)
+				out.close();
+		}
+		if (cache != null)
+			store();
+	}
+	
+	private void summarize() {
+		try {
+			loadSegments(null);
+			summary.finish();
+		}
+		catch (IOException ex) {
+			// cancelled by closing the signal, or unreadable past some point
+			return;
+		}
+		if (cache != null) {
+			try {
+				cache.store(key, index, summary);
+			}
+			catch (IOException ex) {}
+		}
+	}
+	
+	private void store() {
+		try {
+			if (memory != null)
+				cache.store(key, memory, format, hertz, summary);
+			else
+				cache.store(key, temp, format, channels, hertz, summary);
+		}
+		catch (IOException ex) {
+			// the signal is complete either way; it just will not be cached
+		}
+	}
+	
+	ByteBuffer createWriteBuffer(int samples) {
+		return ByteBuffer.allocate(format.getWidth() * samples);
+	}
+	
+	void write(long i, double[][] buffers, int n, ByteBuffer bytes) throws IOException {
+		// segments are written from several threads, but to disjoint ranges
+		// and with positional writes, so they need no locking
+		int width = format.getWidth();
+		for (int c = 0; c < channels; c++) {
+			if (memory != null) {
+				memory[c].set(i, buffers[c], 0, n);
+				continue;
+			}
+			if (channel == null)
+				continue;
+			bytes.clear();
+			format.encode(buffers[c], 0, n, bytes, 0);
+			bytes.limit(n * width);
+			long position = (c * length + i) * width;
+			while (bytes.hasRemaining()) {
+				position += channel.write(bytes, position);
+			}
+		}
+		Metrics.DECODED_SAMPLES.add((long)n * channels);
+	}
+	
+	private int read(double[][] buffers, long remaining) throws IOException {
+		long timing = Metrics.DECODE_TIME.start();
+		int n = iter.read(buffers, 0, (int)Math.min(BUFFERED_DOUBLES, remaining));
+		Metrics.DECODE_TIME.stop(timing);
+		return n;
+	}
+	
+	private void summarize(double[][] buffers, double[] mix, int n) {
+		if (channels == 1) {
+			summary.add(buffers[0], 0, n);
+			return;
+		}
+		System.arraycopy(buffers[0], 0, mix, 0, n);
+		for (int c = 1; c < channels; c++) {
+			for (int i = 0; i < n; i++) {
+				mix[i] += buffers[c][i];
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			mix[i] /= channels;
+		}
+		summary.add(mix, 0, n);
+	}
+	
+	private void grow(long available) {
+		if (data == null)
+			return;
+		// the last channel grows last, so once it is complete they all are
+		for (GrowingData channel : data) {
+			channel.grow(available);
+		}
+	}
+	
+	private void loadStream(ProgressMonitor monitor) throws IOException {
+		double[][] buffers = new double[channels][BUFFERED_DOUBLES];
+		double[] mix = new double[BUFFERED_DOUBLES];
+		ByteBuffer bytes = createWriteBuffer(BUFFERED_DOUBLES);
+		int n;
+		for (long i = 0; i < length; i += n) {
+			if (monitor != null && monitor.isCanceled())
+				throw new InterruptedIOException("failed to read sample");
+			n = read(buffers, length - i);
+			if (n < 0)
+				break;
+			write(i, buffers, n, bytes);
+			summarize(buffers, mix, n);
+			grow(i + n);
+		}
+	}
+	
+	private void loadSegments(ProgressMonitor monitor) throws IOException {
+		int frames = index.getFrameCount();
+		int count = (frames + SEGMENT_FRAMES - 1) / SEGMENT_FRAMES;
+		// each segment holds its mix until the summary reaches it, so only
+		// enough run ahead to keep every worker busy: one per worker, plus
+		// the one being waited on
+		int ahead = DECODE_POOL.getParallelism();
+		AtomicBoolean cancelled = new AtomicBoolean();
+		Deque<Future<float[]>> segments = new ArrayDeque<Future<float[]>>();
+		double[] buffer = new double[BUFFERED_DOUBLES];
+		long available = 0;
+		try {
+			for (int s = 0, submitted = 0; s < count; s++) {
+				for (; submitted < count && submitted <= s + ahead; submitted++) {
+					int first = submitted * SEGMENT_FRAMES;
+					segments.add(DECODE_POOL.submit(new Mp3SegmentTask(file, index,
+							first, Math.min(first + SEGMENT_FRAMES, frames), this,
+							cancelled)));
+				}
+				// segments finish out of order, but the signal grows in order
+				float[] mix = await(segments.poll(), monitor, cancelled);
+				for (int k = 0, n; k < mix.length; k += n) {
+					n = Math.min(BUFFERED_DOUBLES, mix.length - k);
+					for (int i = 0; i < n; i++) {
+						buffer[i] = mix[k + i];
+					}
+					summary.add(buffer, 0, n);
+				}
+				available = Math.min(available + (long)mix.length, length);
+				grow(available);
+			}
+		}
+		finally {
+			cancelled.set(true);
+		}
+	}
+	
+	private static float[] await(Future<float[]> segment, ProgressMonitor monitor,
+			AtomicBoolean cancelled) throws IOException {
+		while (true) {
+			if (monitor != null && monitor.isCanceled()) {
+				cancelled.set(true);
+				throw new InterruptedIOException("failed to read sample");
+			}
+			try {
+				return segment.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+			}
+			catch (TimeoutException ex) {}
+			catch (InterruptedException ex) {
+				cancelled.set(true);
+				throw new InterruptedIOException("interrupted while decoding");
+			}
+			catch (ExecutionException ex) {
+				throw new IOException("failed to decode", ex.getCause());
+			}
+		}
+	}
+}
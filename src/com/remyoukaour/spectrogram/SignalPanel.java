@@ -1,17 +1,28 @@
 package com.remyoukaour.spectrogram;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import javax.swing.JPanel;
 
 public abstract class SignalPanel extends JPanel {
 	private static final long serialVersionUID = 7742340141168006910L;
-
+	
 	public static final long NO_CURSOR = -1;
+	// leaves room for coordinate arithmetic near the int limit
+	private static final int MAX_WIDTH = Integer.MAX_VALUE / 2;
 	
 	protected Signal signal;
 	protected int zoom;
 	protected int prefHeight;
 	protected long cursor;
+	// the data layers are kept under the visible area, so the cursor can be
+	// moved or the view exposed again without painting them
+	private BufferedImage buffer;
+	private final Rectangle bufferBounds = new Rectangle();
+	private Rectangle dirty = new Rectangle();
+	private final Metrics.Histogram paintTime = Metrics.histogram("paint." +
+			getClass().getSimpleName().toLowerCase());
 	
 	public SignalPanel() {
 		this.signal = null;
@@ -30,6 +41,10 @@ public abstract class SignalPanel extends JPanel {
 		rescale();
 	}
 	
+	public void updateLength() {
+		rescale();
+	}
+	
 	public int getPrefHeight() {
 		return prefHeight;
 	}
@@ -59,8 +74,112 @@ public abstract class SignalPanel extends JPanel {
 		rescale();
 	}
 	
+	public void paint(Graphics g) {
+		long timing = paintTime.start();
+		try {
+			Rectangle visible = getVisibleRect();
+			Rectangle clip = g.getClipBounds();
+			AffineTransform transform = ((Graphics2D)g).getTransform();
+			if (visible.isEmpty() || clip == null || !visible.contains(clip) ||
+					transform.getScaleX() != 1.0 || transform.getScaleY() != 1.0) {
+				// scaled or unusual paints go straight to the screen
+				super.paint(g);
+			}
+			else {
+				updateBuffer(visible);
+				g.drawImage(buffer, visible.x, visible.y, null);
+			}
+			drawCursor(g);
+		}
+		finally {
+			paintTime.stop(timing);
+		}
+	}
+	
+	public void repaint(long tm, int x, int y, int width, int height) {
+		// called by the JPanel constructor before the fields are set
+		if (bufferBounds != null)
+			invalidateBuffer(new Rectangle(x, y, width, height));
+		super.repaint(tm, x, y, width, height);
+	}
+	
+	private synchronized void invalidateBuffer(Rectangle r) {
+		dirty = dirty.isEmpty() ? r : dirty.union(r);
+	}
+	
+	private synchronized Rectangle takeDirty() {
+		Rectangle r = dirty;
+		dirty = new Rectangle();
+		return r;
+	}
+	
+	private void updateBuffer(Rectangle visible) {
+		Rectangle stale = takeDirty();
+		if (buffer == null || buffer.getWidth() < visible.width ||
+				buffer.getHeight() < visible.height) {
+			buffer = new BufferedImage(visible.width, visible.height,
+					BufferedImage.TYPE_INT_RGB);
+			stale = visible;
+		}
+		else if (!bufferBounds.getSize().equals(visible.getSize())) {
+			stale = visible;
+		}
+		else if (!bufferBounds.equals(visible)) {
+			// scrolled, so keep what is still in view and paint the rest
+			Rectangle kept = bufferBounds.intersection(visible);
+			if (kept.isEmpty()) {
+				stale = visible;
+			}
+			else {
+				Graphics bg = buffer.getGraphics();
+				bg.copyArea(kept.x - bufferBounds.x, kept.y - bufferBounds.y,
+						kept.width, kept.height, bufferBounds.x - visible.x,
+						bufferBounds.y - visible.y);
+				bg.dispose();
+				stale = union(stale, exposed(visible, kept));
+			}
+		}
+		bufferBounds.setBounds(visible);
+		stale = stale.intersection(visible);
+		if (stale.isEmpty())
+			return;
+		Graphics bg = buffer.getGraphics();
+		bg.translate(-visible.x, -visible.y);
+		bg.setClip(stale);
+		paintComponent(bg);
+		paintBorder(bg);
+		paintChildren(bg);
+		bg.dispose();
+	}
+	
+	private static Rectangle exposed(Rectangle visible, Rectangle kept) {
+		// a scroll along one axis exposes a single strip
+		Rectangle r = new Rectangle();
+		if (kept.x > visible.x)
+			r = union(r, new Rectangle(visible.x, visible.y, kept.x - visible.x,
+					visible.height));
+		if (kept.x + kept.width < visible.x + visible.width)
+			r = union(r, new Rectangle(kept.x + kept.width, visible.y,
+					visible.x + visible.width - kept.x - kept.width, visible.height));
+		if (kept.y > visible.y)
+			r = union(r, new Rectangle(visible.x, visible.y, visible.width,
+					kept.y - visible.y));
+		if (kept.y + kept.height < visible.y + visible.height)
+			r = union(r, new Rectangle(visible.x, kept.y + kept.height,
+					visible.width, visible.y + visible.height - kept.y - kept.height));
+		return r;
+	}
+	
+	private static Rectangle union(Rectangle a, Rectangle b) {
+		return a.isEmpty() ? b : b.isEmpty() ? a : a.union(b);
+	}
+	
 	protected void rescale() {
-		int prefWidth = signal != null ? (int)(signal.getNumSamples() / zoom) : 0;
+		long n = signal != null ? signal.getNumSamples() : 0;
+		while (n / zoom > MAX_WIDTH) {
+			zoom *= 2;
+		}
+		int prefWidth = (int)(n / zoom);
 		setPreferredSize(new Dimension(prefWidth, prefHeight));
 		revalidate();
 		repaint();
@@ -74,16 +193,30 @@ public abstract class SignalPanel extends JPanel {
 		}
 	}
 	
+	public int getCursorX() {
+		return cursor != NO_CURSOR ? (int)(cursor / zoom) : -1;
+	}
+	
+	public long getSample(int x) {
+		return (long)x * zoom;
+	}
+	
 	public synchronized void updateCursor(long microseconds) {
-		int h = (int)getHeight();
 		if (microseconds == NO_CURSOR) {
-			cursor = NO_CURSOR;
-			repaint();
+			moveCursor(NO_CURSOR);
 			return;
 		}
-		repaint((int)(cursor / zoom) - 1, 0, 3, h);
 		double seconds = microseconds / 1000000.0;
-		cursor = (long)(signal.getHertz() * seconds);
-		repaint((int)(cursor / zoom) - 1, 0, 3, h);
+		moveCursor((long)(signal.getHertz() * seconds));
+	}
+	
+	public synchronized void moveCursor(long sample) {
+		// only the cursor changes, so the data layers are left valid
+		int h = getHeight();
+		if (cursor != NO_CURSOR)
+			super.repaint(0, (int)(cursor / zoom) - 1, 0, 3, h);
+		cursor = sample;
+		if (cursor != NO_CURSOR)
+			super.repaint(0, (int)(cursor / zoom) - 1, 0, 3, h);
 	}
 }
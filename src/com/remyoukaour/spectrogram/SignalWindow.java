@@ -1,5 +1,4 @@
 /*
- * Overlap iFFT blocks instead of taking half the samples
  * Optionally use phase info when encoding/decoding spectrogram
  * Support FLAC files
  * Support bit depths other than 16
@@ -22,12 +21,12 @@ import java.awt.image.BufferedImage;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.filechooser.FileFilter;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.*;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.concurrent.ExecutionException;
-import org.kc7bfi.jflac.apps.ExtensionFileFilter;
 
 public class SignalWindow extends JFrame implements ActionListener, ItemListener {
 	private static final long serialVersionUID = 5825907294405308517L;
@@ -37,6 +36,10 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 	private static final int DEFAULT_BINS = 2048;
 	private static double DEFAULT_OVERLAP = 0.5;
 	private static final WindowFunction DEFAULT_WINDOW = WindowFunction.HAMMING;
+	private static final StorageMode DEFAULT_STORAGE = StorageMode.DISK;
+	private static final int GROWTH_INTERVAL = 250;
+	public static final int[] BINS_VALUES = {32, 64, 128, 256, 512, 1024, 2048,
+			4096, 8000, 8192, 11025, 16384, 22050, 32768, 44100};
 	private static final String[]
 			AUDIO_READ_EXTENSIONS = {"wav", "au", "mp3", "ogg", "oga"/*, "flac"*/},
 			AUDIO_WRITE_EXTENSIONS = {"wav"},
@@ -50,6 +53,8 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 			DEFAULT_OVERLAP, DEFAULT_WINDOW, false, false, false);
 	private boolean playing = false;
 	private boolean busy = false;
+	private boolean loading = false;
+	private long playbackStart = -1;
 	
 	/*** Components ***/
 	
@@ -81,12 +86,18 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 	private final JCheckBoxMenuItem logAxis = new JCheckBoxMenuItem("Log frequency");
 	private final JCheckBoxMenuItem fullHeight = new JCheckBoxMenuItem("Full height");
 	private final JCheckBoxMenuItem showPhase = new JCheckBoxMenuItem("Show phase");
+	private final JCheckBoxMenuItem splitChannels = new JCheckBoxMenuItem("Split channels");
 	private final JMenu playbackMenu = new JMenu("Playback");
 	private final JMenuItem play = new JMenuItem("Play", KeyEvent.VK_P);
 	private final JMenuItem stop = new JMenuItem("Stop", KeyEvent.VK_S);
+	private final JCheckBoxMenuItem followPlayback = new JCheckBoxMenuItem("Follow playback");
 	private final JMenu memoryMenu = new JMenu("Memory");
-	private final JCheckBoxMenuItem audioMemory = new JCheckBoxMenuItem("Store audio in memory");
+	private final ButtonGroup storageGroup = new ButtonGroup();
+	private HashMap<JRadioButtonMenuItem, StorageMode> storageItems =
+		new HashMap<JRadioButtonMenuItem, StorageMode>();
+	private final JCheckBoxMenuItem cacheAudio = new JCheckBoxMenuItem("Cache decoded audio", true);
 	private final JMenuItem garbageCollect = new JMenuItem("Garbage collect", KeyEvent.VK_G);
+	private final JCheckBoxMenuItem showMetrics = new JCheckBoxMenuItem("Show performance");
 	private final JMenu helpMenu = new JMenu("Help");
 	private final JMenuItem help = new JMenuItem("Help", KeyEvent.VK_H);
 	private final JMenuItem about = new JMenuItem("About", KeyEvent.VK_A);
@@ -95,13 +106,16 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 	private final DualScrollPane dualScroll =
 			new DualScrollPane(waveformScroll, spectrogramScroll, true, false);
 	private final StatusBar statusBar = new StatusBar();
+	private final MetricsReadout metricsReadout = new MetricsReadout(statusBar);
+	private final PlaybackCursor playbackCursor =
+			new PlaybackCursor(dualScroll, spectrogram, waveform);
 	private final JFileChooser fc = new JFileChooser();
 	private final FileFilter audioReadFilter =
-			new ExtensionFileFilter(AUDIO_READ_EXTENSIONS, "Audio files");
+			new FileNameExtensionFilter("Audio files", AUDIO_READ_EXTENSIONS);
 	private final FileFilter audioWriteFilter =
-			new ExtensionFileFilter(AUDIO_WRITE_EXTENSIONS, "Audio files");
+			new FileNameExtensionFilter("Audio files", AUDIO_WRITE_EXTENSIONS);
 	private final FileFilter imageFilter =
-			new ExtensionFileFilter(IMAGE_EXTENSIONS, "Image files");
+			new FileNameExtensionFilter("Image files", IMAGE_EXTENSIONS);
 	
 	/*** Constructors ***/
 	
@@ -109,6 +123,7 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		super(title);
 		this.name = title;
 		// configuration
+		Metrics.register();
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		setLocationByPlatform(true);
 		// components
@@ -132,7 +147,10 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		logAxis.setMnemonic(KeyEvent.VK_L);
 		fullHeight.setMnemonic(KeyEvent.VK_H);
 		showPhase.setMnemonic(KeyEvent.VK_P);
-		audioMemory.setMnemonic(KeyEvent.VK_M);
+		splitChannels.setMnemonic(KeyEvent.VK_C);
+		cacheAudio.setMnemonic(KeyEvent.VK_C);
+		showMetrics.setMnemonic(KeyEvent.VK_P);
+		followPlayback.setMnemonic(KeyEvent.VK_F);
 		// accelerators
 		open.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O, ActionEvent.CTRL_MASK));
 		close.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_W, ActionEvent.CTRL_MASK));
@@ -146,9 +164,10 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		logAxis.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_L, ActionEvent.CTRL_MASK));
 		fullHeight.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_H, ActionEvent.CTRL_MASK));
 		showPhase.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_E, ActionEvent.CTRL_MASK));
+		splitChannels.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_K, ActionEvent.CTRL_MASK));
 		play.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_P, ActionEvent.CTRL_MASK));
 		stop.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Q, ActionEvent.CTRL_MASK));
-		audioMemory.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_M, ActionEvent.CTRL_MASK));
+		followPlayback.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, ActionEvent.CTRL_MASK));
 		garbageCollect.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, ActionEvent.CTRL_MASK));
 		help.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F1, 0));
 		about.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_A, ActionEvent.CTRL_MASK));
@@ -175,10 +194,14 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		spectrogramMenu.add(logAxis);
 		spectrogramMenu.add(fullHeight);
 		spectrogramMenu.add(showPhase);
+		spectrogramMenu.add(splitChannels);
 		playbackMenu.add(play);
 		playbackMenu.add(stop);
-		memoryMenu.add(audioMemory);
+		playbackMenu.add(followPlayback);
+		setupStorageMenus();
+		memoryMenu.add(cacheAudio);
 		memoryMenu.add(garbageCollect);
+		memoryMenu.add(showMetrics);
 		helpMenu.add(help);
 		helpMenu.add(about);
 		// listeners
@@ -196,6 +219,9 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		logAxis.addItemListener(this);
 		fullHeight.addItemListener(this);
 		showPhase.addItemListener(this);
+		splitChannels.addItemListener(this);
+		showMetrics.addItemListener(this);
+		followPlayback.addItemListener(this);
 		garbageCollect.addActionListener(this);
 		help.addActionListener(this);
 		about.addActionListener(this);
@@ -206,10 +232,8 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 	}
 	
 	private void setupBinMenus() {
-		int[] binsValues = new int[] {32, 64, 128, 256, 512, 1024, 2048, 4096,
-				8000, 8192, 11025, 16384, 22050, 32768, 44100};
-		for (int i = 0; i < binsValues.length; i++) {
-			int value = binsValues[i];
+		for (int i = 0; i < BINS_VALUES.length; i++) {
+			int value = BINS_VALUES[i];
 			JRadioButtonMenuItem item = new JRadioButtonMenuItem(FormatUtils.formatInt(value));
 			setBins.add(item);
 			item.addActionListener(this);
@@ -249,6 +273,31 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		}
 	}
 	
+	private void setupStorageMenus() {
+		StorageMode[] storageValues = StorageMode.values();
+		int[] mnemonics = new int[] {KeyEvent.VK_M, KeyEvent.VK_D, KeyEvent.VK_A};
+		for (int i = 0; i < storageValues.length; i++) {
+			StorageMode value = storageValues[i];
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(value.getName());
+			item.setMnemonic(mnemonics[i]);
+			memoryMenu.add(item);
+			storageGroup.add(item);
+			storageItems.put(item, value);
+			if (value == StorageMode.MEMORY)
+				item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_M, ActionEvent.CTRL_MASK));
+			if (value == DEFAULT_STORAGE)
+				item.setSelected(true);
+		}
+	}
+	
+	private StorageMode getStorage() {
+		for (JRadioButtonMenuItem item : storageItems.keySet()) {
+			if (item.isSelected())
+				return storageItems.get(item);
+		}
+		return DEFAULT_STORAGE;
+	}
+	
 	private void setupLayout() {
 		// structure
 		setLayout(new BorderLayout());
@@ -258,15 +307,35 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		waveformScroll.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
 		waveformScroll.setViewportView(waveform);
 		spectrogramScroll.setViewportView(spectrogram);
+		// listeners
+		MouseAdapter marker = new MouseAdapter() {
+			public void mousePressed(MouseEvent event) {
+				SignalPanel panel = (SignalPanel)event.getSource();
+				markPlaybackStart(panel.getSample(event.getX()));
+			}
+		};
+		waveform.addMouseListener(marker);
+		spectrogram.addMouseListener(marker);
 	}
 	
 	/*** Methods ***/
 	
 	private void setSignal(Signal signal) {
+		Signal old = spectrogram.getSignal();
+		if (old != null && old != signal)
+			stop();
 		setTitle(signal == null ? name : signal.getName() + " - " + name);
+		playbackStart = -1;
 		waveform.setSignal(signal);
 		spectrogram.setSignal(signal);
 		updateStatus();
+		// nothing shows the old signal any more, so its storage is released
+		if (old != null && old != signal) {
+			try {
+				old.close();
+			}
+			catch (IOException ex) {}
+		}
 	}
 	
 	public boolean isPlaying() {
@@ -277,21 +346,32 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		this.busy = busy;
 	}
 	
+	private void setLoading(boolean loading) {
+		this.loading = loading;
+	}
+	
+	private void updateLength() {
+		waveform.updateLength();
+		spectrogram.updateLength();
+		updateStatus();
+	}
+	
 	private void updateStatus() {
 		String status = "";
 		Signal signal = spectrogram.getSignal();
 		if (signal != null) {
-			int samples = signal.getNumSamples();
+			long samples = signal.getNumSamples();
 			int hertz = signal.getHertz();
 			int zoom = spectrogram.getZoom();
 			int bins = spectrogram.getBins();
 			double overlap = spectrogram.getOverlap();
 			int zoomFactor = (int)spectrogram.getSpectrumWidth();
 			WindowFunction window = spectrogram.getWindow();
-			status = String.format("%s (%s, %s Hz) | %s zoom | " +
+			status = String.format("%s (%s, %s, %s Hz) | %s zoom | " +
 					"%s-bin %s%s spectra (%s overlap, %s window)",
 					FormatUtils.formatTime(samples / hertz),
 					FormatUtils.formatCount(samples, "sample"),
+					FormatUtils.formatCount(signal.getNumChannels(), "channel"),
 					FormatUtils.formatInt(hertz),
 					FormatUtils.formatFactor(zoom, zoomFactor),
 					FormatUtils.formatInt(bins),
@@ -304,11 +384,25 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		statusBar.setText(status);
 	}
 	
-	public synchronized void updateCursor(long microseconds) {
-		if (waveform == null || spectrogram == null)
+	private synchronized void markPlaybackStart(long sample) {
+		Signal signal = spectrogram.getSignal();
+		if (playing || signal == null)
 			return;
-		waveform.updateCursor(microseconds);
-		spectrogram.updateCursor(microseconds);
+		playbackStart = Math.max(0, Math.min(sample, signal.getNumSamples() - 1));
+		waveform.moveCursor(playbackStart);
+		spectrogram.moveCursor(playbackStart);
+	}
+	
+	private long getPlaybackStart() {
+		if (playbackStart >= 0)
+			return playbackStart;
+		// otherwise start from the left edge of the visible region
+		int x = spectrogramScroll.getViewport().getViewPosition().x;
+		return spectrogram.getSample(x);
+	}
+	
+	public void updateCursor(long microseconds) {
+		playbackCursor.update(microseconds);
 	}
 	
 	/*** Actions ***/
@@ -317,6 +411,9 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		if (busy)
 			return;
 		Object source = event.getSource();
+		if (loading && (source == open || source == close || source == save ||
+				source == convert || source == play))
+			return;
 		if (source == open)
 			open();
 		else if (source == close)
@@ -363,6 +460,12 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 			fullHeight();
 		else if (item == showPhase)
 			showPhase();
+		else if (item == splitChannels)
+			splitChannels();
+		else if (item == showMetrics)
+			showMetrics();
+		else if (item == followPlayback)
+			followPlayback();
 	}
 	
 	private void open() {
@@ -373,11 +476,31 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 			return;
 		final File file = fc.getSelectedFile();
 		final String name = file.getName();
-		final boolean useMemory = audioMemory.isSelected();
-		SwingWorker<Signal, Void> worker = new SwingWorker<Signal, Void>() {
+		final StorageMode storage = getStorage();
+		final AnalysisCache cache = cacheAudio.isSelected() ?
+				AnalysisCache.getDefault() : null;
+		final Timer growth = new Timer(GROWTH_INTERVAL, new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				updateLength();
+				// the waveform's summary may still be filling in after loading
+				Signal signal = waveform.getSignal();
+				if (!loading && (signal == null || signal.getSummary().isFinished()))
+					((Timer)event.getSource()).stop();
+			}
+		});
+		SwingWorker<Signal, Signal> worker = new SwingWorker<Signal, Signal>() {
+			private Signal shown = null;
+			
 			public Signal doInBackground() {
+				SignalLoader loader = null;
+				ProgressMonitor monitor = null;
 				try {
-					return Signal.fromFile(SignalWindow.this, file, useMemory);
+					loader = new SignalLoader(file, storage, cache);
+					// show the signal right away and let it fill in
+					publish(loader.getSignal());
+					monitor = Signal.getMonitor(SignalWindow.this, loader);
+					loader.load(monitor);
+					return loader.getSignal();
 				}
 				catch (InterruptedIOException ex) {}
 				catch (Exception ex) {
@@ -385,9 +508,21 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 							"Could not open " + name + "!",
 							"Error", JOptionPane.ERROR_MESSAGE);
 				}
+				finally {
+					if (monitor != null)
+						monitor.close();
+				}
 				return null;
 			}
 			
+			protected void process(java.util.List<Signal> signals) {
+				shown = signals.get(0);
+				SignalWindow.this.setSignal(shown);
+				SignalWindow.this.setLoading(true);
+				SignalWindow.this.setBusy(false);
+				growth.start();
+			}
+			
 			public void done() {
 				Signal signal = null;
 				try {
@@ -399,8 +534,14 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 							"Could not open " + name + "!",
 							"Error", JOptionPane.ERROR_MESSAGE);
 				}
-				if (signal != null)
-					SignalWindow.this.setSignal(signal);
+				if (signal != null) {
+					SignalWindow.this.updateLength();
+				}
+				else if (shown != null) {
+					// loading failed or was cancelled
+					SignalWindow.this.setSignal(null);
+				}
+				SignalWindow.this.setLoading(false);
 				SignalWindow.this.setBusy(false);
 			}
 		};
@@ -421,9 +562,11 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
 			public Void doInBackground() {
 				try {
-					spectrogram.save(SignalWindow.this, file, IMAGE_EXTENSIONS[0]);
+					int count = spectrogram.save(SignalWindow.this, file,
+							IMAGE_EXTENSIONS[0]);
+					String saved = count > 1 ? count + " strips of " + name : name;
 					JOptionPane.showMessageDialog(SignalWindow.this,
-							"Saved " + name + "!",
+							"Saved " + saved + "!",
 							"Success", JOptionPane.PLAIN_MESSAGE);
 				}
 				catch (IOException ex) {
@@ -620,13 +763,19 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 		updateStatus();
 	}
 	
+	private void splitChannels() {
+		spectrogram.setSplitChannels(splitChannels.isSelected());
+		updateStatus();
+	}
+	
 	private synchronized void play() {
 		Signal signal = spectrogram.getSignal();
 		if (playing || signal == null)
 			return;
 		playing = true;
 		try {
-			new Player(this, signal).start();
+			new Player(this, signal, getPlaybackStart()).start();
+			playbackCursor.start(this);
 		}
 		catch (IllegalArgumentException ex) {
 			JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage(),
@@ -637,12 +786,24 @@ public class SignalWindow extends JFrame implements ActionListener, ItemListener
 	
 	public synchronized void stop() {
 		playing = false;
+		playbackCursor.stop();
+	}
+	
+	private void followPlayback() {
+		playbackCursor.setFollow(followPlayback.isSelected());
 	}
 	
 	private void garbageCollect() {
 		System.gc();
 	}
 	
+	private void showMetrics() {
+		if (showMetrics.isSelected())
+			metricsReadout.start();
+		else
+			metricsReadout.stop();
+	}
+	
 	private void help() {
 		String message = "<html><body>" +
 				"Help is not yet available.<br>" +
@@ -0,0 +1,160 @@
+package com.remyoukaour.spectrogram;
+
+public class SlidingSpectrum {
+	private static final double TAU = Math.PI * 2;
+	private static final int READ_COLUMNS = 16;
+	private static final int MAX_READ = 1 << 16;
+	
+	private final Signal signal;
+	private final int channel;
+	private final int bins, n;
+	private final WindowFunction window;
+	private final boolean showPhase;
+	// the current frame, starting at ring[head]
+	private final double[] ring;
+	private int head = 0;
+	private long start = Long.MIN_VALUE;
+	// samples read ahead of the frame, so each is read once
+	private final int readSize;
+	private double[] chunk = null;
+	private long chunkStart = Long.MIN_VALUE;
+	private final double[] frame;
+	// the running transform, for frames that slide instead
+	private final double[] re, im, cos, sin;
+	private final long fftCost;
+	private long synced = Long.MIN_VALUE;
+	
+	public SlidingSpectrum(Signal signal, int channel, int bins,
+			WindowFunction window, boolean showPhase, int hop) {
+		this.signal = signal;
+		this.channel = channel;
+		this.bins = bins;
+		this.n = bins * 2;
+		this.window = window;
+		this.showPhase = showPhase;
+		this.ring = new double[n];
+		this.readSize = Math.max(1, (int)Math.min(MAX_READ, (long)hop * READ_COLUMNS));
+		this.frame = new double[n];
+		// only an unwindowed frame can slide one sample at a time
+		if (window == null || window == WindowFunction.RECTANGULAR) {
+			this.re = new double[bins + 1];
+			this.im = new double[bins + 1];
+			this.cos = new double[bins + 1];
+			this.sin = new double[bins + 1];
+			for (int k = 0; k <= bins; k++) {
+				cos[k] = Math.cos(TAU * k / n);
+				sin[k] = Math.sin(TAU * k / n);
+			}
+		}
+		else {
+			this.re = null;
+			this.im = null;
+			this.cos = null;
+			this.sin = null;
+		}
+		this.fftCost = (long)(n * Math.log(n) / Math.log(2));
+	}
+	
+	public void read(long i, double[] out) {
+		// i only moves forward between calls for the frames to be reused
+		long s = i - bins;
+		long shift = s - start;
+		if (start == Long.MIN_VALUE || shift < 0 || shift >= n) {
+			signal.readSamples(channel, s, n, ring, 0);
+			head = 0;
+			start = s;
+			transform(out);
+		}
+		else if (re != null && s - synced < n &&
+				shift * (bins + 1) * 3 < fftCost) {
+			slide((int)shift);
+			output(out);
+		}
+		else {
+			advance((int)shift);
+			transform(out);
+		}
+		Metrics.SPECTRA.increment();
+	}
+	
+	private void advance(int shift) {
+		// the samples that leave the frame are overwritten by those that enter
+		long next = start + n;
+		while (shift > 0) {
+			int k = Math.min(shift, n - head);
+			readAhead(next, k, ring, head);
+			head = (head + k) % n;
+			next += k;
+			shift -= k;
+		}
+		start = next - n;
+	}
+	
+	private void slide(int shift) {
+		// each step drops the oldest sample, adds the newest, and rotates
+		// every bin to the new start
+		long next = start + n;
+		for (int j = 0; j < shift; j++, next++) {
+			readAhead(next, 1, frame, 0);
+			double delta = frame[0] - ring[head];
+			ring[head] = frame[0];
+			head = head + 1 == n ? 0 : head + 1;
+			for (int k = 0; k <= bins; k++) {
+				double r = re[k] + delta, m = im[k];
+				re[k] = r * cos[k] - m * sin[k];
+				im[k] = r * sin[k] + m * cos[k];
+			}
+		}
+		start = next - n;
+	}
+	
+	private void readAhead(long i, int length, double[] dst, int off) {
+		if (chunk == null)
+			chunk = new double[readSize];
+		while (length > 0) {
+			if (i < chunkStart || i >= chunkStart + chunk.length) {
+				signal.readSamples(channel, i, chunk.length, chunk, 0);
+				chunkStart = i;
+			}
+			int from = (int)(i - chunkStart);
+			int k = Math.min(length, chunk.length - from);
+			System.arraycopy(chunk, from, dst, off, k);
+			i += k;
+			off += k;
+			length -= k;
+		}
+	}
+	
+	private void transform(double[] out) {
+		System.arraycopy(ring, head, frame, 0, n - head);
+		System.arraycopy(ring, 0, frame, n - head, head);
+		if (re == null) {
+			if (window != null)
+				window.window(frame);
+			Spectrum.compute(frame, showPhase, out);
+			return;
+		}
+		// a full transform also clears the rounding that sliding accumulates
+		FFTCache.get(n).realForward(frame);
+		re[0] = frame[0];
+		im[0] = 0.0;
+		re[bins] = frame[1];
+		im[bins] = 0.0;
+		for (int k = 1; k < bins; k++) {
+			re[k] = frame[2*k];
+			im[k] = frame[2*k+1];
+		}
+		synced = start;
+		Spectrum.measure(frame, showPhase, out);
+	}
+	
+	private void output(double[] out) {
+		frame[0] = re[0];
+		frame[1] = re[bins];
+		for (int k = 1; k < bins; k++) {
+			frame[2*k] = re[k];
+			frame[2*k+1] = im[k];
+		}
+		Spectrum.measure(frame, showPhase, out);
+	}
+}
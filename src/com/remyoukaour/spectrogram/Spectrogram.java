@@ -2,82 +2,214 @@ package com.remyoukaour.spectrogram;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.imageio.ImageIO;
-import javax.sound.sampled.*;
-import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+import javax.swing.SwingUtilities;
 
 public class Spectrogram extends SignalPanel {
 	private static final long serialVersionUID = -5442088111430822270L;
 	
 	private static final double TAU = Math.PI * 2;
 	private static final int MAX_COLOR = 0xFF;
+	private static final int TILE_WIDTH = 128;
+	private static final int TILE_PREFETCH = 2;
+	private static final long TILE_CAPACITY = 1 << 24;
+	private static final Color PLACEHOLDER_COLOR = Color.DARK_GRAY;
+	private static final int PROGRESS_INTERVAL = 100;
+	private static final int MAX_IMAGE_HEAP_FRACTION = 4;
+	private static final long STRIP_PIXELS = 1 << 24;
+	private static final int SYNTHESIS_COLUMNS = 256;
+	private static final ForkJoinPool EXPORT_POOL = new ForkJoinPool();
+	private static final int SCALE_CAPACITY = 4;
+	// every tile at a given size colors and lays out its bins the same way
+	private static final Map<Integer, Scale> SCALES =
+			new LinkedHashMap<Integer, Scale>(SCALE_CAPACITY + 1, 1.1f, true) {
+		private static final long serialVersionUID = 2741963870L;
+		
+		protected boolean removeEldestEntry(Map.Entry<Integer, Scale> eldest) {
+			return size() > SCALE_CAPACITY;
+		}
+	};
 	
-	private boolean logAxis, showPhase;
+	private final TileCache tiles = new TileCache(TILE_CAPACITY,
+			Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	private boolean logAxis, fullHeight, showPhase, splitChannels;
 	private int bins, lbins[];
-	private double overlap, maxPower, step, cf;
+	private double overlap;
+	private Palette palette;
+	private long length;
 	private WindowFunction window;
 	
-	private static double getPower(int rgb, double maxPower) {
+	private static double[] getAmplitudes(double maxPower) {
+		// inverts the palette for each of its four color bands
 		double step = Math.log1p(maxPower) / 4;
 		double cf = MAX_COLOR / step;
-		int r = (rgb >> 16) & 0xFF;
-		int g = (rgb >> 8) & 0xFF;
-		int b = rgb & 0xFF;
-		double k = 0.0;
-		if (r > 0 && g > 0 && b > 0)
-			k = g / cf + step * 3;
-		else if (r > 0)
-			k = r / cf + step * 2;
-		else if (g > 0)
-			k = g / cf + step;
-		else
-			k = b / cf;
-		return Math.expm1(k);
+		double[] amplitudes = new double[4 * (MAX_COLOR + 1)];
+		for (int band = 0; band < 4; band++) {
+			for (int v = 0; v <= MAX_COLOR; v++) {
+				double k = v / cf + step * band;
+				amplitudes[band * (MAX_COLOR + 1) + v] = Math.sqrt(Math.expm1(k));
+			}
+		}
+		return amplitudes;
+	}
+	
+	private static double[] getSynthesisWindow(int n, int hop) {
+		double[] window = new double[n];
+		if (hop >= n) {
+			// frames just abut, so take them whole
+			Arrays.fill(window, 1.0);
+			return window;
+		}
+		// periodic Hann; frames have random phases, so they add in power
+		// and are normalized to keep the level of unoverlapped frames
+		double[] sums = new double[hop];
+		for (int i = 0; i < n; i++) {
+			window[i] = 0.5 - 0.5 * Math.cos(TAU * i / n);
+			sums[i % hop] += window[i] * window[i];
+		}
+		for (int i = 0; i < n; i++) {
+			window[i] /= Math.sqrt(Math.max(sums[i % hop], 1e-12));
+		}
+		return window;
 	}
 	
 	public static void imageToAudio(Component parent, BufferedImage image,
 			File f, int hertz, double overlap) throws IOException {
 		String name = f.getName();
-		int cols = image.getWidth();
-		int bins = image.getHeight();
 		IndeterminateProgressMonitor monitor = new IndeterminateProgressMonitor(parent,
-				"Converting image to " + name + "...", null, 0, cols);
+				"Converting image to " + name + "...", null, 0, image.getWidth());
 		monitor.setMillisToDecideToPopup(250);
 		monitor.setMillisToPopup(250);
-		double maxPower = bins * bins / 4.0;
-		//double freqF = (double)hertz / bins / 2; // unused
-		int sw = (int)(bins * 2 * overlap);
-		double[] samples = new double[sw * cols];
-		double[] col = new double[bins * 2];
-		DoubleFFT_1D fft = new DoubleFFT_1D(col.length);
-		int index = 0;
-		for (int c = 0; c < cols; c++) {
-			monitor.setProgress(c);
-			for (int r = 0; r < bins; r++) {
-				if (monitor.isCanceled())
-					throw new IOException("failed to convert sample");
-				int rgb = image.getRGB(c, bins - r - 1);
-				double power = getPower(rgb, maxPower);
-				double amplitude = Math.sqrt(power);
-				//double frequency = r * freqF; // unused
-				double phase = Math.random() * TAU - Math.PI;
-				col[2*r] = amplitude * Math.cos(phase);
-				col[2*r+1] = amplitude * Math.sin(phase);
+		try {
+			imageToAudio(image, f, hertz, overlap, monitor);
+		}
+		finally {
+			monitor.close();
+		}
+	}
+	
+	public static void imageToAudio(BufferedImage image, File f, int hertz,
+			double overlap, IndeterminateProgressMonitor monitor) throws IOException {
+		int cols = image.getWidth();
+		int bins = image.getHeight();
+		int n = bins * 2;
+		int hop = Math.max(1, (int)(n * overlap));
+		long total = (long)cols * hop;
+		if (total * 2 > 0xFFFFFFFFL - 36)
+			throw new IOException("too long for a WAV file");
+		double[] amplitudes = getAmplitudes(bins * bins / 4.0);
+		double[] window = getSynthesisWindow(n, hop);
+		long seed = new Random().nextLong();
+		AtomicBoolean cancelled = new AtomicBoolean();
+		int blocks = (cols + SYNTHESIS_COLUMNS - 1) / SYNTHESIS_COLUMNS;
+		int ahead = EXPORT_POOL.getParallelism() * 2;
+		Deque<Future<double[]>> pending = new ArrayDeque<Future<double[]>>();
+		double[] carry = new double[Math.max(0, n - hop)];
+		ByteBuffer bytes = ByteBuffer.allocate(2 * SYNTHESIS_COLUMNS * hop)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		FileChannel out = new FileOutputStream(f).getChannel();
+		boolean done = false;
+		long timing = Metrics.SYNTHESIS_TIME.start();
+		try {
+			writeWaveHeader(out, hertz, total);
+			int next = 0;
+			for (int b = 0; b < blocks; b++) {
+				// keep a bounded number of blocks in flight, in order
+				for (; next < blocks && next < b + ahead; next++) {
+					int first = next * SYNTHESIS_COLUMNS;
+					pending.add(EXPORT_POOL.submit(new SynthesisTask(image, bins, hop,
+							window, amplitudes, first,
+							Math.min(SYNTHESIS_COLUMNS, cols - first), seed + next,
+							cancelled)));
+				}
+				double[] block = getBlock(pending.peek(), monitor, cancelled);
+				pending.poll();
+				for (int i = 0; i < carry.length; i++) {
+					block[i] += carry[i];
+				}
+				int columns = Math.min(SYNTHESIS_COLUMNS, cols - b * SYNTHESIS_COLUMNS);
+				int ready = columns * hop;
+				bytes.clear();
+				for (int i = 0; i < ready; i++) {
+					// each sample was the sum of two half-spectra
+					double v = block[i] * 2 * 32768.0;
+					bytes.putShort(v > Short.MAX_VALUE ? Short.MAX_VALUE :
+							v < Short.MIN_VALUE ? Short.MIN_VALUE : (short)v);
+				}
+				bytes.flip();
+				while (bytes.hasRemaining()) {
+					out.write(bytes);
+				}
+				System.arraycopy(block, ready, carry, 0, carry.length);
+				Metrics.SYNTHESIZED_SAMPLES.add(ready);
+				if (monitor != null)
+					monitor.setProgress(b * SYNTHESIS_COLUMNS + columns);
+			}
+			done = true;
+		}
+		finally {
+			cancelled.set(true);
+			Metrics.SYNTHESIS_TIME.stop(timing);
+			out.close();
+			if (!done)
+				f.delete();
+		}
+	}
+	
+	private static double[] getBlock(Future<double[]> future,
+			IndeterminateProgressMonitor monitor, AtomicBoolean cancelled)
+			throws IOException {
+		while (true) {
+			if (monitor != null && monitor.isCanceled()) {
+				cancelled.set(true);
+				throw new IOException("failed to convert sample");
 			}
-			fft.realInverse(col, true);
-			int start = 0; // keep beginning samples
-			int end = start + sw;
-			for (int s = start; s < end; s++) {
-				samples[index++] = col[s] * 2;
+			try {
+				return future.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+			}
+			catch (TimeoutException ex) {}
+			catch (InterruptedException ex) {
+				cancelled.set(true);
+				throw new InterruptedIOException("interrupted while converting");
+			}
+			catch (ExecutionException ex) {
+				throw new IOException("failed to convert sample", ex.getCause());
 			}
 		}
-		monitor.makeIndeterminate();
-		SampledMemoryData data = new SampledMemoryData(samples);
-		AudioInputStream stream = data.toStream(hertz);		
-		AudioSystem.write(stream, AudioFileFormat.Type.WAVE, f);
-		monitor.close();
+	}
+	
+	private static void writeWaveHeader(FileChannel out, int hertz, long samples)
+			throws IOException {
+		int dataBytes = (int)(samples * 2);
+		ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+		header.put("RIFF".getBytes("US-ASCII")).putInt(36 + dataBytes);
+		header.put("WAVE".getBytes("US-ASCII"));
+		header.put("fmt ".getBytes("US-ASCII")).putInt(16);
+		header.putShort((short)1).putShort((short)1); // PCM, mono
+		header.putInt(hertz).putInt(hertz * 2);
+		header.putShort((short)2).putShort((short)16);
+		header.put("data".getBytes("US-ASCII")).putInt(dataBytes);
+		header.flip();
+		while (header.hasRemaining()) {
+			out.write(header);
+		}
 	}
 	
 	public Spectrogram(int bins, double overlap, WindowFunction window,
@@ -92,24 +224,65 @@ public class Spectrogram extends SignalPanel {
 		recalculateBinsCache();
 	}
 	
-	private void recalculateBinsCache() {
-		this.maxPower = bins * bins / 4.0;
-		this.step = Math.log1p(maxPower) / 4;
-		this.cf = MAX_COLOR / step;
-		this.lbins = new int[bins];
+	private static int[] logBins(int bins) {
+		int[] lbins = new int[bins];
 		double bf = (bins - 1) / Math.log(bins);
 		for (int i = 0; i < bins; i++) {
 			lbins[i] = (int)(Math.log1p(i) * bf);
 		}
+		return lbins;
+	}
+	
+	private static Scale getScale(int bins) {
+		synchronized (SCALES) {
+			Scale scale = SCALES.get(bins);
+			if (scale == null) {
+				scale = new Scale(new Palette(bins), logBins(bins));
+				SCALES.put(bins, scale);
+			}
+			return scale;
+		}
+	}
+	
+	private void recalculateBinsCache() {
+		Scale scale = getScale(bins);
+		this.palette = scale.palette;
+		this.lbins = scale.lbins;
+	}
+	
+	public void setSignal(Signal signal) {
+		tiles.clear();
+		this.length = signal != null ? signal.getNumSamples() : 0;
+		super.setSignal(signal);
+		setFullHeight(fullHeight);
+	}
+	
+	public void updateLength() {
+		// drop tiles that were rendered before their samples arrived
+		final long old = length;
+		tiles.remove(new TileCache.Filter() {
+			public boolean accept(TileKey key) {
+				long end = (long)(key.getIndex() + 1) * TILE_WIDTH * key.getZoom();
+				double reach = key.getBins() * (1 + key.getOverlap());
+				return end + reach >= old;
+			}
+		});
+		this.length = signal != null ? signal.getNumSamples() : 0;
+		super.updateLength();
 	}
 	
 	public int getBins() {
 		return bins;
 	}
 	
-	public void setBins(int bins) {
+	public void setBins(final int bins) {
 		this.bins = bins;
 		recalculateBinsCache();
+		tiles.remove(new TileCache.Filter() {
+			public boolean accept(TileKey key) {
+				return key.getBins() != bins;
+			}
+		});
 		repaint();
 	}
 	
@@ -117,8 +290,13 @@ public class Spectrogram extends SignalPanel {
 		return overlap;
 	}
 	
-	public void setOverlap(double overlap) {
+	public void setOverlap(final double overlap) {
 		this.overlap = overlap;
+		tiles.remove(new TileCache.Filter() {
+			public boolean accept(TileKey key) {
+				return key.getOverlap() != overlap;
+			}
+		});
 		repaint();
 	}
 	
@@ -126,66 +304,63 @@ public class Spectrogram extends SignalPanel {
 		return window;
 	}
 	
-	public void setWindow(WindowFunction window) {
+	public void setWindow(final WindowFunction window) {
 		this.window = window;
+		tiles.remove(new TileCache.Filter() {
+			public boolean accept(TileKey key) {
+				return key.getWindow() != window;
+			}
+		});
 		repaint();
 	}
 	
-	public void setLogAxis(boolean log) {
+	public void setLogAxis(final boolean log) {
 		this.logAxis = log;
+		tiles.remove(new TileCache.Filter() {
+			public boolean accept(TileKey key) {
+				return key.isLogAxis() != log;
+			}
+		});
 		repaint();
 	}
 	
 	public void setFullHeight(boolean fullHeight) {
-		setPrefHeight(fullHeight ? bins : 0);
+		this.fullHeight = fullHeight;
+		setPrefHeight(fullHeight ? bins * getRows() : 0);
 	}
 	
-	public void showPhase(boolean showPhase) {
-		this.showPhase = showPhase;
+	public boolean isSplitChannels() {
+		return splitChannels;
+	}
+	
+	public void setSplitChannels(boolean split) {
+		// tiles are keyed by channel, so the mix and the channels can share
+		// the cache
+		this.splitChannels = split;
+		setFullHeight(fullHeight);
 		repaint();
 	}
 	
-	public double getSpectrumWidth() {
-		return bins * 2 * overlap;
+	public int getRows() {
+		return splitChannels && signal != null ? signal.getNumChannels() : 1;
 	}
 	
-	private Color powerColor(double power) {
-		double k = Math.log1p(power);
-		int r = 0, g = 0, b = 0;
-		if (k < step) {
-			// black to blue
-			b = (int)(k * cf);
-		}
-		else if (k < step * 2) {
-			// blue to green
-			k -= step;
-			g = (int)(k * cf);
-			b = MAX_COLOR - g;
-		}
-		else if (k < step * 3) {
-			// green to red
-			k -= step * 2;
-			r = (int)(k * cf);
-			g = MAX_COLOR - r;
-		}
-		else {
-			// red to white
-			k -= step * 3;
-			r = MAX_COLOR;
-			g = (int)(k * cf);
-			b = g;
-		}
-		if (r > MAX_COLOR) r = MAX_COLOR;
-		if (g > MAX_COLOR) g = MAX_COLOR;
-		if (b > MAX_COLOR) b = MAX_COLOR;
-		return new Color(r, g, b);
+	private int getChannel(int row, int rows) {
+		return rows > 1 ? row : Signal.MIX;
+	}
+	
+	public void showPhase(final boolean showPhase) {
+		this.showPhase = showPhase;
+		tiles.remove(new TileCache.Filter() {
+			public boolean accept(TileKey key) {
+				return key.isShowPhase() != showPhase;
+			}
+		});
+		repaint();
 	}
 	
-	private Color phaseColor(double phase) {
-		int c = (int)(phase * MAX_COLOR);
-		if (c < 0) c = 0;
-		if (c > MAX_COLOR) c = MAX_COLOR;
-		return new Color(c, c, c);
+	public double getSpectrumWidth() {
+		return bins * 2 * overlap;
 	}
 	
 	public void paintComponent(Graphics g) {
@@ -193,65 +368,270 @@ public class Spectrogram extends SignalPanel {
 		if (signal == null)
 			return;
 		Color oldColor = g.getColor();
-		double xf = getSpectrumWidth();
-		double yf = (double)getHeight() / (bins - 1);
+		Rectangle bounds = g.getClipBounds();
+		Rectangle visible = getVisibleRect();
+		final int minT = visible.x / TILE_WIDTH - TILE_PREFETCH;
+		final int maxT = (visible.x + visible.width) / TILE_WIDTH + TILE_PREFETCH;
+		tiles.cancel(new TileCache.Filter() {
+			public boolean accept(TileKey key) {
+				return key.getIndex() < minT || key.getIndex() > maxT;
+			}
+		});
+		int h = getHeight();
+		int rows = getRows();
+		int first = bounds.x / TILE_WIDTH;
+		int last = (bounds.x + bounds.width - 1) / TILE_WIDTH;
+		for (int r = 0; r < rows; r++) {
+			int y = r * h / rows;
+			int rh = (r + 1) * h / rows - y;
+			for (int t = first; t <= last; t++) {
+				TileKey key = new TileKey(bins, overlap, window, logAxis, showPhase,
+						zoom, t, getChannel(r, rows));
+				BufferedImage tile = tiles.get(key);
+				int x = t * TILE_WIDTH;
+				if (tile != null) {
+					g.drawImage(tile, x, y, TILE_WIDTH, rh, null);
+				}
+				else {
+					g.setColor(PLACEHOLDER_COLOR);
+					g.fillRect(x, y, TILE_WIDTH, rh);
+					requestTile(key);
+				}
+			}
+		}
+		// every channel's tiles are queued together so the workers render
+		// them side by side
+		int w = getWidth();
+		for (int t = Math.max(minT, 0); t <= maxT && t * TILE_WIDTH < w; t++) {
+			for (int r = 0; r < rows; r++) {
+				requestTile(new TileKey(bins, overlap, window, logAxis, showPhase,
+						zoom, t, getChannel(r, rows)));
+			}
+		}
+		g.setColor(oldColor);
+	}
+	
+	private void requestTile(final TileKey key) {
+		final Signal signal = this.signal;
+		if (tiles.get(key) != null)
+			return;
+		tiles.request(key, new Callable<BufferedImage>() {
+			public BufferedImage call() {
+				return renderTile(signal, key);
+			}
+		}, new Runnable() {
+			public void run() {
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						repaint(key.getIndex() * TILE_WIDTH, 0, TILE_WIDTH,
+								getHeight());
+					}
+				});
+			}
+		});
+	}
+	
+	public boolean isRendering() {
+		return !tiles.isIdle();
+	}
+	
+	static BufferedImage renderTile(Signal signal, TileKey key) {
+		long timing = Metrics.TILE_TIME.start();
+		int bins = key.getBins();
+		int zoom = key.getZoom();
+		WindowFunction window = key.getWindow();
+		boolean showPhase = key.isShowPhase();
+		Scale scale = getScale(bins);
+		int[] lbins = key.isLogAxis() ? scale.lbins : null;
+		Palette palette = scale.palette;
+		BufferedImage image = new BufferedImage(TILE_WIDTH, bins,
+				BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		double[] spectrum = new double[bins];
+		double xf = bins * 2 * key.getOverlap();
 		int sw = (int)(xf / zoom) + 1;
-		int sh = (int)Math.ceil(yf);
 		int inc = (int)xf;
-		Rectangle bounds = g.getClipBounds();
-		int minX = (int)bounds.getX() - sw;
-		int maxX = (int)(bounds.getX() + bounds.getWidth());
-		int n = signal.getNumSamples();
-		int limX = n / zoom - sw;
+		int minX = key.getIndex() * TILE_WIDTH;
+		int maxX = minX + TILE_WIDTH;
+		long n = signal.getNumSamples();
+		long limX = n / zoom - sw;
 		n += inc; // overshoot
-		for (int i = 0; i < n; i += inc) {
+		long start = (long)(((double)(minX - sw) * zoom + xf / 2) / inc) * inc;
+		// columns overlap at fine settings, so they are computed as one stream
+		SlidingSpectrum spectra = new SlidingSpectrum(signal, key.getChannel(), bins,
+				window, showPhase, inc);
+		for (long i = Math.max(start, 0); i < n; i += inc) {
 			int x = (int)((i - xf / 2) / zoom);
-			if (x < minX || x > maxX)
+			if (x >= maxX)
+				break;
+			if (x + sw <= minX)
 				continue;
-			Spectrum spectrum = signal.getSpectrum(i, bins, window, showPhase);
+			int nextX = (int)((i + inc - xf / 2) / zoom);
+			if (nextX == x && nextX <= limX && i + inc < n)
+				continue; // completely overdrawn by the next spectrum
+			spectra.read(i, spectrum);
 			if (x > limX) {
-				sw -= x - limX;
+				sw -= (int)(x - limX);
 				i = n;
 			}
-			for (int j = 0; j < bins; j++) {
-				int y = (int)(j * yf);
-				int s = bins - (logAxis ? lbins[j] : j) - 1;
-				double v = spectrum.get(s);
-				g.setColor(showPhase ? phaseColor(v) : powerColor(v));
-				g.fillRect(x, y, sw, sh);
-			}
+			int x1 = Math.max(x, minX) - minX;
+			int x2 = Math.min(x + sw, maxX) - minX;
+			palette.paintColumn(spectrum, lbins, showPhase, pixels, x1,
+					x2 - x1, TILE_WIDTH);
 		}
-		drawCursor(g);
-		g.setColor(oldColor);
+		Metrics.TILE_TIME.stop(timing);
+		return image;
 	}
 	
-	public void save(Component parent, File f, String ext) throws IOException {
+	public int save(File f, String ext) throws IOException {
+		return save(f, ext, null);
+	}
+	
+	public int save(Component parent, File f, String ext) throws IOException {
 		if (signal == null)
 			throw new IOException("no signal to save");
 		String name = f.getName();
-		int n = signal.getNumSamples();
-		int sw = (int)getSpectrumWidth();
-		int width = n / sw + 1;
+		int width = (int)Math.min(getImageWidth(), Integer.MAX_VALUE);
 		IndeterminateProgressMonitor monitor = new IndeterminateProgressMonitor(parent,
-				"Saving " + name + "...", null, 0, width);
+				"Saving " + name + "...", null, 0, width * getRows());
 		monitor.setMillisToDecideToPopup(250);
 		monitor.setMillisToPopup(250);
-		BufferedImage image = new BufferedImage(width, bins,
+		return save(f, ext, monitor);
+	}
+	
+	public long getImageWidth() {
+		return signal != null ? signal.getNumSamples() / (int)getSpectrumWidth() + 1 : 0;
+	}
+	
+	private int save(File f, String ext, IndeterminateProgressMonitor monitor)
+			throws IOException {
+		if (signal == null)
+			throw new IOException("no signal to save");
+		int sw = (int)getSpectrumWidth();
+		if (getImageWidth() > Integer.MAX_VALUE)
+			throw new IOException("too many spectra to save");
+		long timing = Metrics.EXPORT_TIME.start();
+		try {
+			return save(f, ext, monitor, sw);
+		}
+		finally {
+			Metrics.EXPORT_TIME.stop(timing);
+		}
+	}
+	
+	private int save(File f, String ext, IndeterminateProgressMonitor monitor,
+			int sw) throws IOException {
+		try {
+			return write(f, ext, monitor, sw);
+		}
+		finally {
+			if (monitor != null)
+				monitor.close();
+		}
+	}
+	
+	private int write(File f, String ext, IndeterminateProgressMonitor monitor,
+			int sw) throws IOException {
+		int width = (int)getImageWidth();
+		int height = bins * getRows();
+		AtomicInteger progress = new AtomicInteger();
+		long budget = Math.min(Integer.MAX_VALUE - 8,
+				Runtime.getRuntime().maxMemory() / MAX_IMAGE_HEAP_FRACTION / 4);
+		if ((long)width * height <= budget) {
+			BufferedImage image = new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_RGB);
+			renderColumns(image, 0, width, sw, monitor, progress);
+			if (monitor != null)
+				monitor.makeIndeterminate();
+			ImageIO.write(image, ext, f);
+			return 1;
+		}
+		// too large for one image, so write numbered strips of a fixed size
+		int stripWidth = (int)Math.max(1, Math.min(width, STRIP_PIXELS / height));
+		BufferedImage strip = new BufferedImage(stripWidth, height,
 				BufferedImage.TYPE_INT_RGB);
-		for (int x = 0; x < width; x++) {
-			monitor.setProgress(x);
-			Spectrum spectrum = signal.getSpectrum(x * sw, bins, window, showPhase);
-			for (int y = 0; y < bins; y++) {
-				if (monitor.isCanceled())
-					throw new IOException("failed to get pixel");
-				int s = bins - (logAxis ? lbins[y] : y) - 1;
-				double v = spectrum.get(s);
-				Color c = showPhase ? phaseColor(v) : powerColor(v);
-				image.setRGB(x, y, c.getRGB());
+		int count = 0;
+		boolean written = false;
+		try {
+			for (int first = 0; first < width; first += stripWidth, count++) {
+				int columns = Math.min(stripWidth, width - first);
+				renderColumns(strip, first, columns, sw, monitor, progress);
+				BufferedImage image = columns < stripWidth ?
+						strip.getSubimage(0, 0, columns, height) : strip;
+				ImageIO.write(image, ext, getStripFile(f, count, ext));
+			}
+			written = true;
+			return count;
+		}
+		finally {
+			// the strips of a failed export would pass for a complete one
+			if (!written) {
+				for (int i = 0; i <= count; i++) {
+					getStripFile(f, i, ext).delete();
+				}
+			}
+		}
+	}
+	
+	public static File getStripFile(File f, int index, String ext) {
+		String name = f.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return new File(f.getParentFile(), String.format("%s_%04d.%s", name,
+				index, ext));
+	}
+	
+	private void renderColumns(BufferedImage image, int first, int columns,
+			int sw, IndeterminateProgressMonitor monitor, AtomicInteger progress)
+			throws IOException {
+		int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		int width = image.getWidth();
+		int rows = getRows();
+		AtomicBoolean cancelled = new AtomicBoolean();
+		// each channel is a separate task, so they render in parallel
+		ColumnTask[] tasks = new ColumnTask[rows];
+		for (int r = 0; r < rows; r++) {
+			tasks[r] = new ColumnTask(signal, getChannel(r, rows), bins, sw, window,
+					showPhase, logAxis ? lbins : null, palette, pixels,
+					r * bins * width, width, first, first, first + columns,
+					progress, cancelled);
+			EXPORT_POOL.execute(tasks[r]);
+		}
+		for (ColumnTask task : tasks) {
+			while (true) {
+				if (monitor != null) {
+					monitor.setProgress(progress.get());
+					if (monitor.isCanceled())
+						cancelled.set(true);
+				}
+				try {
+					task.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+					break;
+				}
+				catch (TimeoutException ex) {}
+				catch (InterruptedException ex) {
+					cancelled.set(true);
+					throw new InterruptedIOException("interrupted while saving");
+				}
+				catch (ExecutionException ex) {
+					cancelled.set(true);
+					throw new IOException("failed to get pixel", ex.getCause());
+				}
 			}
 		}
-		monitor.makeIndeterminate();
-		ImageIO.write(image, ext, f);
-		monitor.close();
+		if (cancelled.get())
+			throw new IOException("failed to get pixel");
+		Metrics.EXPORTED_COLUMNS.add(columns);
+	}
+	
+	private static class Scale {
+		private final Palette palette;
+		private final int[] lbins;
+		
+		public Scale(Palette palette, int[] lbins) {
+			this.palette = palette;
+			this.lbins = lbins;
+		}
 	}
 }
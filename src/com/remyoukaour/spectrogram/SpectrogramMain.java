@@ -8,6 +8,11 @@ public class SpectrogramMain {
 	private static final int PROGRAM_HEIGHT = 405;
 	
 	public static void main(String[] args) {
+		if (args.length > 0) {
+			System.setProperty("java.awt.headless", "true");
+			BatchRenderer.main(args);
+			return;
+		}
 		try {
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
 		}
@@ -7,6 +7,7 @@ public class StatusBar extends JPanel {
 	private static final long serialVersionUID = 3594146783477354882L;
 	
 	private final JLabel status = new JLabel();
+	private final JLabel details = new JLabel();
 
 	public StatusBar() {
 		this("");
@@ -15,9 +16,11 @@ public class StatusBar extends JPanel {
 	public StatusBar(String text) {
 		setLayout(new BorderLayout());
 		add(status, BorderLayout.CENTER);
+		add(details, BorderLayout.EAST);
 		setPreferredSize(new Dimension(0, 20));
 		setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, Color.LIGHT_GRAY));
 		status.setBorder(BorderFactory.createEmptyBorder(1, 4, 1, 4));
+		details.setBorder(BorderFactory.createEmptyBorder(1, 4, 1, 4));
 		setText(text);
 	}
 
@@ -28,4 +31,12 @@ public class StatusBar extends JPanel {
 	public void setText(String text) {
 		status.setText(text);
 	}
+
+	public String getDetails() {
+		return details.getText();
+	}
+
+	public void setDetails(String text) {
+		details.setText(text);
+	}
 }
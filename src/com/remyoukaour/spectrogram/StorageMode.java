@@ -0,0 +1,17 @@
+package com.remyoukaour.spectrogram;
+
+public enum StorageMode {
+	MEMORY("Store audio in memory"),
+	DISK("Store audio on disk"),
+	MAPPED("Memory-map audio on disk");
+	
+	private final String name;
+	
+	private StorageMode(String name) {
+		this.name = name;
+	}
+	
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,71 @@
+package com.remyoukaour.spectrogram;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+
+public class SynthesisTask implements Callable<double[]> {
+	private static final double TAU = Math.PI * 2;
+	
+	private final BufferedImage image;
+	private final int bins, hop, first, columns;
+	private final double[] window, amplitudes;
+	private final long seed;
+	private final AtomicBoolean cancelled;
+	
+	public SynthesisTask(BufferedImage image, int bins, int hop, double[] window,
+			double[] amplitudes, int first, int columns, long seed,
+			AtomicBoolean cancelled) {
+		this.image = image;
+		this.bins = bins;
+		this.hop = hop;
+		this.window = window;
+		this.amplitudes = amplitudes;
+		this.first = first;
+		this.columns = columns;
+		this.seed = seed;
+		this.cancelled = cancelled;
+	}
+	
+	public static int amplitudeIndex(int rgb) {
+		int r = (rgb >> 16) & 0xFF;
+		int g = (rgb >> 8) & 0xFF;
+		int b = rgb & 0xFF;
+		if (r > 0 && g > 0 && b > 0)
+			return 0x300 | g;
+		if (r > 0)
+			return 0x200 | r;
+		if (g > 0)
+			return 0x100 | g;
+		return b;
+	}
+	
+	public double[] call() {
+		int n = bins * 2;
+		// each block overlaps the next by the part past its last hop
+		double[] out = new double[columns * hop + n - hop];
+		double[] frame = new double[n];
+		int[] rgb = new int[bins];
+		Random random = new Random(seed);
+		DoubleFFT_1D fft = FFTCache.get(n);
+		for (int c = 0; c < columns; c++) {
+			if (cancelled.get())
+				return null;
+			image.getRGB(first + c, 0, 1, bins, rgb, 0, 1);
+			for (int r = 0; r < bins; r++) {
+				double amplitude = amplitudes[amplitudeIndex(rgb[bins - r - 1])];
+				double phase = random.nextDouble() * TAU - Math.PI;
+				frame[2*r] = amplitude * Math.cos(phase);
+				frame[2*r+1] = amplitude * Math.sin(phase);
+			}
+			fft.realInverse(frame, true);
+			int off = c * hop;
+			for (int s = 0; s < n; s++) {
+				out[off + s] += frame[s] * window[s];
+			}
+		}
+		return out;
+	}
+}
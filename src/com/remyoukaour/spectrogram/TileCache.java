@@ -0,0 +1,122 @@
+package com.remyoukaour.spectrogram;
+
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class TileCache {
+	public interface Filter {
+		boolean accept(TileKey key);
+	}
+	
+	private final long capacity;
+	private final Map<TileKey, BufferedImage> cache;
+	private final Set<TileKey> pending;
+	private final int threads;
+	private ExecutorService workers;
+	private long pixels;
+	private int generation;
+	
+	public TileCache(long capacity, int threads) {
+		this.capacity = capacity;
+		this.cache = new LinkedHashMap<TileKey, BufferedImage>(16, 0.75f, true);
+		this.pending = new HashSet<TileKey>();
+		this.threads = threads;
+		this.workers = null;
+		this.pixels = 0;
+		this.generation = 0;
+	}
+	
+	public synchronized BufferedImage get(TileKey key) {
+		return cache.get(key);
+	}
+	
+	public synchronized boolean isPending(TileKey key) {
+		return pending.contains(key);
+	}
+	
+	public synchronized boolean isIdle() {
+		return pending.isEmpty();
+	}
+	
+	public synchronized void request(final TileKey key,
+			final Callable<BufferedImage> renderer, final Runnable ready) {
+		if (cache.containsKey(key) || !pending.add(key))
+			return;
+		final int gen = generation;
+		if (workers == null) {
+			// started lazily so that panels which never paint, such as
+			// those used for headless export, create no threads
+			workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "spectrogram-tile");
+					t.setDaemon(true);
+					t.setPriority(Thread.NORM_PRIORITY - 1);
+					return t;
+				}
+			});
+		}
+		workers.execute(new Runnable() {
+			public void run() {
+				if (!isPending(key))
+					return;
+				BufferedImage tile = null;
+				try {
+					tile = renderer.call();
+				}
+				catch (Exception ex) {
+					ex.printStackTrace();
+				}
+				if (put(key, tile, gen) && ready != null)
+					ready.run();
+			}
+		});
+	}
+	
+	private synchronized boolean put(TileKey key, BufferedImage tile, int gen) {
+		if (gen != generation || !pending.remove(key) || tile == null)
+			return false;
+		BufferedImage old = cache.put(key, tile);
+		if (old != null)
+			pixels -= area(old);
+		pixels += area(tile);
+		Iterator<BufferedImage> iter = cache.values().iterator();
+		while (pixels > capacity && cache.size() > 1) {
+			pixels -= area(iter.next());
+			iter.remove();
+		}
+		return true;
+	}
+	
+	public synchronized void remove(Filter filter) {
+		Iterator<Map.Entry<TileKey, BufferedImage>> iter =
+				cache.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<TileKey, BufferedImage> entry = iter.next();
+			if (filter.accept(entry.getKey())) {
+				pixels -= area(entry.getValue());
+				iter.remove();
+			}
+		}
+		cancel(filter);
+	}
+	
+	public synchronized void cancel(Filter filter) {
+		Iterator<TileKey> iter = pending.iterator();
+		while (iter.hasNext()) {
+			if (filter.accept(iter.next()))
+				iter.remove();
+		}
+	}
+	
+	public synchronized void clear() {
+		cache.clear();
+		pending.clear();
+		pixels = 0;
+		generation++;
+	}
+	
+	private static long area(BufferedImage image) {
+		return (long)image.getWidth() * image.getHeight();
+	}
+}
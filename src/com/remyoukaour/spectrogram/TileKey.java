@@ -0,0 +1,84 @@
+package com.remyoukaour.spectrogram;
+
+public class TileKey {
+	private final int bins;
+	private final double overlap;
+	private final WindowFunction window;
+	private final boolean logAxis, showPhase;
+	private final int zoom;
+	private final int index;
+	private final int channel;
+	
+	public TileKey(int bins, double overlap, WindowFunction window,
+			boolean logAxis, boolean showPhase, int zoom, int index) {
+		this(bins, overlap, window, logAxis, showPhase, zoom, index, Signal.MIX);
+	}
+	
+	public TileKey(int bins, double overlap, WindowFunction window,
+			boolean logAxis, boolean showPhase, int zoom, int index, int channel) {
+		this.bins = bins;
+		this.overlap = overlap;
+		this.window = window;
+		this.logAxis = logAxis;
+		this.showPhase = showPhase;
+		this.zoom = zoom;
+		this.index = index;
+		this.channel = channel;
+	}
+	
+	public int getBins() {
+		return bins;
+	}
+	
+	public double getOverlap() {
+		return overlap;
+	}
+	
+	public WindowFunction getWindow() {
+		return window;
+	}
+	
+	public boolean isLogAxis() {
+		return logAxis;
+	}
+	
+	public boolean isShowPhase() {
+		return showPhase;
+	}
+	
+	public int getZoom() {
+		return zoom;
+	}
+	
+	public int getIndex() {
+		return index;
+	}
+	
+	public int getChannel() {
+		return channel;
+	}
+	
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof TileKey))
+			return false;
+		TileKey k = (TileKey)o;
+		return bins == k.bins && overlap == k.overlap && window == k.window &&
+				logAxis == k.logAxis && showPhase == k.showPhase &&
+				zoom == k.zoom && index == k.index && channel == k.channel;
+	}
+	
+	public int hashCode() {
+		long bits = Double.doubleToLongBits(overlap);
+		int h = bins;
+		h = h * 31 + (int)(bits ^ (bits >>> 32));
+		h = h * 31 + (window != null ? window.hashCode() : 0);
+		h = h * 31 + (logAxis ? 1 : 0);
+		h = h * 31 + (showPhase ? 1 : 0);
+		h = h * 31 + zoom;
+		h = h * 31 + index;
+		h = h * 31 + channel;
+		return h;
+	}
+}
@@ -5,7 +5,8 @@ import java.awt.*;
 public class Waveform extends SignalPanel {
 	public static final long serialVersionUID = 1220411153L;
 	
-	private static final int BUFFERED_SAMPLES = 1024;
+	private static final Color PEAK_COLOR = Color.BLUE;
+	private static final Color RMS_COLOR = new Color(0x80, 0x80, 0xFF);
 	
 	public Waveform() {
 		super();
@@ -16,33 +17,81 @@ public class Waveform extends SignalPanel {
 		if (signal == null)
 			return;
 		Color oldColor = g.getColor();
-		g.setColor(Color.BLUE);
-		int hh = getHeight() / 2;
 		Rectangle bounds = g.getClipBounds();
-		int minX = (int)bounds.getX() - 1;
+		int minX = Math.max((int)bounds.getX() - 1, 0);
 		int maxX = (int)(bounds.getX() + bounds.getWidth());
-		int pp = hh;
-		int n = signal.getNumSamples();
-		drawing:
-		for (int i = 0; i < n; i += BUFFERED_SAMPLES) {
-			double[] data = signal.getSamples(i, BUFFERED_SAMPLES);
-			for (int j = 0; j < BUFFERED_SAMPLES; j += zoom) {
-				int x = (i + j) / zoom;
-				if (x < minX || x > maxX)
-					continue;
-				for (int k = 0; k < zoom; k++) {
-					if (i + j + k >= n)
-						break drawing;
-					if (j + k >= BUFFERED_SAMPLES)
-						break;
-					double v = data[j + k];
-					int p = (int)(v * hh);
-					g.drawLine(x, hh + pp, x, hh + p);
-					pp = p;
-				}
-			}
-		}
-		drawCursor(g);
+		int level = signal.getSummary().getLevel(zoom);
+		if (level < 0 && zoom < 1 << WaveformSummary.MIN_LEVEL)
+			paintSamples(g, minX, maxX);
+		else
+			paintSummary(g, level, minX, maxX);
 		g.setColor(oldColor);
 	}
+	
+	private void paintSamples(Graphics g, int minX, int maxX) {
+		g.setColor(PEAK_COLOR);
+		int hh = getHeight() / 2;
+		long n = signal.getNumSamples();
+		long start = (long)minX * zoom;
+		long end = Math.min((long)(maxX + 1) * zoom, n);
+		if (start >= end)
+			return;
+		int prev = start > 0 ? 1 : 0;
+		double[] data = signal.getSamples(start - prev, (int)(end - start) + prev);
+		int pp = (int)(data[0] * hh);
+		for (long i = start; i < end; i++) {
+			int x = (int)(i / zoom);
+			int p = (int)(data[(int)(i - start) + prev] * hh);
+			g.drawLine(x, hh + pp, x, hh + p);
+			pp = p;
+		}
+	}
+	
+	private void paintSummary(Graphics g, int level, int minX, int maxX) {
+		int hh = getHeight() / 2;
+		double[] range = new double[3];
+		double[] buffer = level < 0 ? new double[zoom] : null;
+		int plo = hh, phi = hh;
+		boolean first = true;
+		for (int x = minX; x <= maxX; x++) {
+			long start = (long)x * zoom;
+			if (!summarize(level, start, start + zoom, range, buffer))
+				break;
+			int lo = (int)(range[0] * hh);
+			int hi = (int)(range[1] * hh);
+			int rms = (int)(range[2] * hh);
+			// join with the previous column so steep edges stay connected
+			int top = first ? lo : Math.min(lo, phi);
+			int bottom = first ? hi : Math.max(hi, plo);
+			g.setColor(PEAK_COLOR);
+			g.drawLine(x, hh + top, x, hh + bottom);
+			g.setColor(RMS_COLOR);
+			g.drawLine(x, hh + Math.max(lo, -rms), x, hh + Math.min(hi, rms));
+			plo = lo;
+			phi = hi;
+			first = false;
+		}
+	}
+	
+	private boolean summarize(int level, long start, long end, double[] range,
+			double[] buffer) {
+		if (level >= 0)
+			return signal.getSummary().summarize(level, start, end, range);
+		// the summary of a very long signal is coarser than this zoom
+		int n = (int)(Math.min(end, signal.getNumSamples()) - start);
+		if (n <= 0)
+			return false;
+		signal.readSamples(start, n, buffer, 0);
+		double lo = buffer[0], hi = buffer[0], sq = 0.0;
+		for (int i = 0; i < n; i++) {
+			double v = buffer[i];
+			if (v < lo) lo = v;
+			if (v > hi) hi = v;
+			sq += v * v;
+		}
+		range[0] = lo;
+		range[1] = hi;
+		range[2] = Math.sqrt(sq / n);
+		return true;
+	}
 }
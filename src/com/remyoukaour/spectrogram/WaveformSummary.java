@@ -0,0 +1,227 @@
+package com.remyoukaour.spectrogram;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class WaveformSummary {
+	public static final int MIN_LEVEL = 4;
+	private static final int MAX_BUCKETS = 1 << 22;
+	private static final int BUFFERED_FLOATS = 1 << 14;
+	
+	private final long size;
+	private final int baseLevel;
+	private final float[][] mins, maxs, rmss;
+	private float min, max;
+	private double squares;
+	private int count;
+	private long added;
+	private volatile long ready;
+	
+	public static WaveformSummary fromData(SampledData data, int blockSize) {
+		long n = data.size();
+		WaveformSummary summary = new WaveformSummary(n);
+		double[] block = new double[blockSize];
+		for (long i = 0; i < n; i += blockSize) {
+			int len = (int)Math.min(blockSize, n - i);
+			data.read(i, len, block, 0);
+			summary.add(block, 0, len);
+		}
+		summary.finish();
+		return summary;
+	}
+	
+	public static WaveformSummary read(DataInput in) throws IOException {
+		WaveformSummary summary = new WaveformSummary(in.readLong());
+		for (int level = summary.baseLevel; level < summary.mins.length; level++) {
+			readFloats(in, summary.mins[level]);
+			readFloats(in, summary.maxs[level]);
+			readFloats(in, summary.rmss[level]);
+		}
+		summary.added = summary.size;
+		summary.ready = summary.size;
+		return summary;
+	}
+	
+	private static void readFloats(DataInput in, float[] values) throws IOException {
+		byte[] bytes = new byte[4 * Math.min(BUFFERED_FLOATS, values.length)];
+		for (int i = 0, n; i < values.length; i += n) {
+			n = Math.min(BUFFERED_FLOATS, values.length - i);
+			in.readFully(bytes, 0, n * 4);
+			ByteBuffer.wrap(bytes).asFloatBuffer().get(values, i, n);
+		}
+	}
+	
+	public WaveformSummary(long size) {
+		this.size = size;
+		// very long signals start coarser so the summary stays bounded
+		int base = MIN_LEVEL;
+		while (buckets(size, base) > MAX_BUCKETS) {
+			base++;
+		}
+		this.baseLevel = base;
+		int levels = base + 1;
+		while (1L << (levels - 1) < size) {
+			levels++;
+		}
+		this.mins = new float[levels][];
+		this.maxs = new float[levels][];
+		this.rmss = new float[levels][];
+		for (int level = base; level < levels; level++) {
+			int buckets = (int)buckets(size, level);
+			mins[level] = new float[buckets];
+			maxs[level] = new float[buckets];
+			rmss[level] = new float[buckets];
+		}
+		this.min = Float.MAX_VALUE;
+		this.max = -Float.MAX_VALUE;
+		this.squares = 0.0;
+		this.count = 0;
+		this.added = 0;
+		this.ready = 0;
+	}
+	
+	private static long buckets(long size, int level) {
+		return (size + (1L << level) - 1) >> level;
+	}
+	
+	public long size() {
+		return size;
+	}
+	
+	public boolean isFinished() {
+		return ready == size;
+	}
+	
+	public void add(double v) {
+		if (added >= size)
+			return;
+		float f = (float)v;
+		if (f < min) min = f;
+		if (f > max) max = f;
+		squares += v * v;
+		count++;
+		added++;
+		if (count == 1 << baseLevel) {
+			int b = (int)((added - 1) >> baseLevel);
+			flush(b);
+			// complete pairs can be merged into every level right away, so
+			// readers can use the summary while it is still being built
+			for (int level = baseLevel; level + 1 < mins.length && (b & 1) == 1;
+					level++, b >>= 1) {
+				merge(level + 1, b >> 1);
+			}
+			if (added < size)
+				ready = added;
+		}
+	}
+	
+	public void add(double[] data, int off, int len) {
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			add(data[i]);
+		}
+	}
+	
+	private void flush(int b) {
+		mins[baseLevel][b] = min;
+		maxs[baseLevel][b] = max;
+		rmss[baseLevel][b] = (float)Math.sqrt(squares / count);
+		min = Float.MAX_VALUE;
+		max = -Float.MAX_VALUE;
+		squares = 0.0;
+		count = 0;
+	}
+	
+	private long count(int level, int b) {
+		return Math.min(1L << level, size - ((long)b << level));
+	}
+	
+	private void merge(int level, int b) {
+		float[] cmin = mins[level-1], cmax = maxs[level-1], crms = rmss[level-1];
+		int c = b * 2;
+		if (c + 1 < cmin.length) {
+			mins[level][b] = Math.min(cmin[c], cmin[c+1]);
+			maxs[level][b] = Math.max(cmax[c], cmax[c+1]);
+			// the last child may cover fewer samples than the others
+			double n1 = count(level - 1, c), n2 = count(level - 1, c + 1);
+			double sq = crms[c] * crms[c] * n1 + crms[c+1] * crms[c+1] * n2;
+			rmss[level][b] = (float)Math.sqrt(sq / (n1 + n2));
+		}
+		else {
+			mins[level][b] = cmin[c];
+			maxs[level][b] = cmax[c];
+			rmss[level][b] = crms[c];
+		}
+	}
+	
+	public void finish() {
+		if (count > 0)
+			flush((int)((added - 1) >> baseLevel));
+		// samples that never arrived stay silent; merge everything that
+		// could not be merged while adding
+		int first = (int)(added >> baseLevel);
+		for (int level = baseLevel + 1; level < mins.length; level++) {
+			first >>= 1;
+			for (int b = first; b < mins[level].length; b++) {
+				merge(level, b);
+			}
+		}
+		added = size;
+		ready = size;
+	}
+	
+	public int getLevel(int zoom) {
+		if (zoom < 1L << baseLevel)
+			return -1;
+		int level = baseLevel;
+		while (level + 1 < mins.length && 1L << (level + 1) <= zoom) {
+			level++;
+		}
+		return level;
+	}
+	
+	public boolean summarize(int level, long start, long end, double[] result) {
+		long ready = this.ready;
+		long first = Math.max(start >> level, 0);
+		long last = (Math.min(end, ready) - 1) >> level;
+		if (ready < size)
+			last = Math.min(last, (ready >> level) - 1);
+		last = Math.min(last, mins[level].length - 1);
+		if (first > last)
+			return false;
+		int b1 = (int)first, b2 = (int)last;
+		float[] lmin = mins[level], lmax = maxs[level], lrms = rmss[level];
+		double lo = lmin[b1], hi = lmax[b1], sq = 0.0;
+		for (int b = b1; b <= b2; b++) {
+			if (lmin[b] < lo) lo = lmin[b];
+			if (lmax[b] > hi) hi = lmax[b];
+			sq += lrms[b] * lrms[b];
+		}
+		result[0] = lo;
+		result[1] = hi;
+		result[2] = Math.sqrt(sq / (b2 - b1 + 1));
+		return true;
+	}
+	
+	public void write(DataOutput out) throws IOException {
+		if (!isFinished())
+			throw new IllegalStateException("summary is not finished");
+		out.writeLong(size);
+		for (int level = baseLevel; level < mins.length; level++) {
+			writeFloats(out, mins[level]);
+			writeFloats(out, maxs[level]);
+			writeFloats(out, rmss[level]);
+		}
+	}
+	
+	private static void writeFloats(DataOutput out, float[] values) throws IOException {
+		byte[] bytes = new byte[4 * Math.min(BUFFERED_FLOATS, values.length)];
+		for (int i = 0, n; i < values.length; i += n) {
+			n = Math.min(BUFFERED_FLOATS, values.length - i);
+			ByteBuffer.wrap(bytes).asFloatBuffer().put(values, i, n);
+			out.write(bytes, 0, n * 4);
+		}
+	}
+}
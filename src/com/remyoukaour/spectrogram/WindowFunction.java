@@ -1,157 +1,162 @@
 package com.remyoukaour.spectrogram;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public enum WindowFunction {
 	RECTANGULAR("Rectangular (Dirichlet)") {
-		public void window(double[] data) {
-			// do nothing
+		protected void fill(double[] table) {
+			Arrays.fill(table, 1.0);
 		}
 	},
 	
 	TRIANGULAR("Triangular (Bartlett)") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = (n - 1) / 2.0;
 			double b = 2.0 / (n - 1);
 			for (int i = 0; i < n; i++) {
-				data[i] *= b * (a - Math.abs(i - a));
+				table[i] = b * (a - Math.abs(i - a));
 			}
 		}
 	},
 	
 	COSINE("Cosine (sine)") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = Math.PI / (n - 1);
 			for (int i = 0; i < n; i++) {
-				data[i] *= Math.sin(a * i);
+				table[i] = Math.sin(a * i);
 			}
 		}
 	},
 	
 	GAUSSIAN("Gaussian") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = (n - 1) / 2.0;
 			double b = a * 0.4;
 			for (int i = 0; i < n; i++) {
-				data[i] *= Math.exp(-0.5 * Math.pow((i - a) / b, 2));
+				table[i] = Math.exp(-0.5 * Math.pow((i - a) / b, 2));
 			}
 		}
 	},
 	
 	LANCZOS("Lanczos (sinc)") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = TAU / (n - 1);
+			table[0] = 1.0;
 			for (int i = 1; i < n; i++) {
 				double b = i * a;
-				data[i] *= Math.sin(b) / b;
+				table[i] = Math.sin(b) / b;
 			}
 		}
 	},
 	
 	WELCH("Welch") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = n / 2.0;
 			for (int i = 0; i < n; i++) {
-				data[i] *= 1 - Math.pow((i - a) / a, 2);
+				table[i] = 1 - Math.pow((i - a) / a, 2);
 			}
 		}
 	},
 	
 	HANN("Hann") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = TAU / (n - 1);
 			for (int i = 0; i < n; i++) {
-				data[i] *= 0.5 - 0.5 * Math.cos(i * a);
+				table[i] = 0.5 - 0.5 * Math.cos(i * a);
 			}
 		}
 	},
 	
 	HAMMING("Hamming") {
-		public void window(double[] data) {
+		protected void fill(double[] table) {
 			// http://cnx.org/content/m0505/latest/
-			int n = data.length;
+			int n = table.length;
 			double a = TAU / (n - 1);
 			for (int i = 0; i < n; i++) {
-				data[i] *= 0.54 - 0.46 * Math.cos(i * a);
+				table[i] = 0.54 - 0.46 * Math.cos(i * a);
 			}
 		}
 	},
 	
 	BARTLETT_HANN("Bartlett-Hann") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = n - 1.0;
 			double b = TAU / (n - 1);
 			for (int i = 0; i < n; i++) {
-				data[i] *= 0.62 - 0.48 * Math.abs(i / a - 0.5) -
+				table[i] = 0.62 - 0.48 * Math.abs(i / a - 0.5) -
 						0.38 * Math.cos(i * b);
 			}
 		}
 	},
 	
 	BLACKMAN("Blackman") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = TAU / (n - 1);
 			double b = 2 * a;
 			for (int i = 0; i < n; i++) {
-				data[i] *= 0.42 - 0.5 * Math.cos(i * a) + 0.08 * Math.cos(i * b);
+				table[i] = 0.42 - 0.5 * Math.cos(i * a) + 0.08 * Math.cos(i * b);
 			}
 		}
 	},
 	
 	NUTTALL("Nuttall") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = TAU / (n - 1);
 			double b = 2 * a;
 			double c = 3 * a;
 			for (int i = 0; i < n; i++) {
-				data[i] *= 0.355768 - 0.487396 * Math.cos(i * a) +
+				table[i] = 0.355768 - 0.487396 * Math.cos(i * a) +
 						0.144232 * Math.cos(i * b) - 0.012604 * Math.cos(i * c);
 			}
 		}
 	},
 	
 	BLACKMAN_HARRIS("Blackman-Harris") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = TAU / (n - 1);
 			double b = 2 * a;
 			double c = 3 * a;
 			for (int i = 0; i < n; i++) {
-				data[i] *= 0.35875 - 0.48829 * Math.cos(i * a) +
+				table[i] = 0.35875 - 0.48829 * Math.cos(i * a) +
 						0.14128 * Math.cos(i * b) - 0.01168 * Math.cos(i * c);
 			}
 		}
 	},
 	
 	BLACKMAN_NUTTALL("Blackman-Nuttall") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = TAU / (n - 1);
 			double b = 2 * a;
 			double c = 3 * a;
 			for (int i = 0; i < n; i++) {
-				data[i] *= 0.3635819 - 0.4891775 * Math.cos(i * a) +
+				table[i] = 0.3635819 - 0.4891775 * Math.cos(i * a) +
 						0.1365995 * Math.cos(i * b) - 0.0106411 * Math.cos(i * c);
 			}
 		}
 	},
 	
 	FLAT_TOP("Flat top") {
-		public void window(double[] data) {
-			int n = data.length;
+		protected void fill(double[] table) {
+			int n = table.length;
 			double a = TAU / (n - 1);
 			double b = 2 * a;
 			double c = 3 * a;
 			double d = 4 * a;
 			for (int i = 0; i < n; i++) {
-				data[i] *= 0.21557895 - 0.41663158 * Math.cos(i * a) +
+				table[i] = 0.21557895 - 0.41663158 * Math.cos(i * a) +
 						0.277263158 * Math.cos(i * b) -
 						0.083578947 * Math.cos(i * c) +
 						0.006947368 * Math.cos(i * d);
@@ -162,14 +167,54 @@ public enum WindowFunction {
 	private static final double TAU = Math.PI * 2;
 	
 	private final String name;
+	private final Map<Integer, double[]> tables;
+	private volatile double[] lastTable;
 	
 	private WindowFunction(String name) {
 		this.name = name;
+		this.tables = new ConcurrentHashMap<Integer, double[]>();
 	}
 	
 	public String getName() {
 		return name;
 	}
 	
-	public abstract void window(double[] data);
+	protected abstract void fill(double[] table);
+	
+	public double[] getCoefficients(int n) {
+		// shared between callers, so it must not be modified
+		double[] table = lastTable;
+		if (table != null && table.length == n)
+			return table;
+		table = tables.get(n);
+		if (table == null) {
+			table = new double[n];
+			fill(table);
+			tables.put(n, table);
+		}
+		lastTable = table;
+		return table;
+	}
+	
+	public void window(double[] data) {
+		if (this == RECTANGULAR)
+			return;
+		double[] table = getCoefficients(data.length);
+		int n = data.length;
+		for (int i = 0; i < n; i++) {
+			data[i] *= table[i];
+		}
+	}
+	
+	public void window(double[] src, int off, double[] dst) {
+		int n = dst.length;
+		if (this == RECTANGULAR) {
+			System.arraycopy(src, off, dst, 0, n);
+			return;
+		}
+		double[] table = getCoefficients(n);
+		for (int i = 0; i < n; i++) {
+			dst[i] = src[off + i] * table[i];
+		}
+	}
 }
@@ -0,0 +1,5 @@
+package com.remyoukaour.spectrogram;
+
+public abstract class WritableSampledData extends SampledData {
+	public abstract void set(long start, double[] src, int off, int length);
+}
@@ -0,0 +1,250 @@
+package com.remyoukaour.spectrogram;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+
+public class ConcurrencyTest {
+	private static final int HERTZ = 44100;
+	private static final int LENGTH = HERTZ * 2;
+	private static final int THREADS = 8;
+	private static final int[] BINS = {64, 500, 1024, 2048};
+	
+	private File left, right;
+	private Signal signal;
+	private ExecutorService executor;
+	
+	@Before
+	public void setUp() throws IOException {
+		// one channel on disk and one mapped, so the stores are shared too
+		Random random = new Random(1);
+		left = createPcm(random);
+		right = createPcm(random);
+		SampledData[] channels = {
+			new SampledDiskData(new RandomAccessFile(left, "r"), LENGTH,
+					SampleFormat.SHORT),
+			openMapped(right)
+		};
+		signal = new Signal("test", channels, null, HERTZ, null);
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		executor.shutdownNow();
+		signal.close();
+		left.delete();
+		right.delete();
+	}
+	
+	@Test
+	public void spectraMatchSingleThreaded() throws Exception {
+		// alternating sizes on every thread is what used to rebuild and
+		// race on the shared transform plan
+		final Map<Integer, double[]> expected = new HashMap<Integer, double[]>();
+		for (int bins : BINS) {
+			expected.put(bins, spectrum(bins, WindowFunction.NUTTALL));
+		}
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int t = 0; t < THREADS; t++) {
+			results.add(executor.submit(new Callable<Boolean>() {
+				public Boolean call() {
+					for (int k = 0; k < 50; k++) {
+						for (int bins : BINS) {
+							double[] out = spectrum(bins, WindowFunction.NUTTALL);
+							if (!Arrays.equals(expected.get(bins), out))
+								return false;
+						}
+					}
+					return true;
+				}
+			}));
+		}
+		for (Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+	}
+	
+	@Test
+	public void exportMatchesSingleThreaded() throws Exception {
+		for (WindowFunction window : new WindowFunction[] {
+				WindowFunction.RECTANGULAR, WindowFunction.HAMMING}) {
+			for (int channel : new int[] {Signal.MIX, 0, 1}) {
+				int[] single = export(new ForkJoinPool(1), channel, 512, 37, window);
+				int[] parallel = export(new ForkJoinPool(THREADS), channel, 512, 37,
+						window);
+				assertArrayEquals(window + " channel " + channel, single, parallel);
+			}
+		}
+	}
+	
+	@Test
+	public void exportMatchesSpectra() throws Exception {
+		// windowed frames are transformed in full, so every column must be
+		// the spectrum read on its own
+		int bins = 256, sw = 200, columns = LENGTH / sw;
+		WindowFunction window = WindowFunction.HANN;
+		Palette palette = new Palette(bins);
+		int[] expected = new int[columns * bins];
+		double[] spectrum = new double[bins];
+		for (int c = 0; c < columns; c++) {
+			signal.readSpectrum(0, (long)c * sw, bins, window, false, spectrum);
+			palette.paintColumn(spectrum, null, false, expected, c, 1, columns);
+		}
+		assertArrayEquals(expected, export(new ForkJoinPool(THREADS), 0, bins, sw,
+				window));
+	}
+	
+	@Test
+	public void slidingSpectraMatchSpectra() {
+		// hops this short slide the unwindowed frame instead of transforming
+		// it, and every frame length resyncs with a full transform
+		for (int bins : new int[] {32, 64, 128}) {
+			double[] actual = new double[bins], expected = new double[bins];
+			for (int sw = 1; sw <= 4; sw++) {
+				for (int channel : new int[] {Signal.MIX, 0}) {
+					SlidingSpectrum spectra = new SlidingSpectrum(signal, channel, bins,
+							WindowFunction.RECTANGULAR, false, sw);
+					for (int c = 0; c < bins * 16; c++) {
+						spectra.read((long)c * sw, actual);
+						signal.readSpectrum(channel, (long)c * sw, bins,
+								WindowFunction.RECTANGULAR, false, expected);
+						for (int k = 0; k < bins; k++) {
+							assertEquals("bins " + bins + " hop " + sw + " column " + c,
+									expected[k], actual[k], 1e-9 * (1 + expected[k]));
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void tilesMatchSingleThreaded() throws Exception {
+		final List<TileKey> keys = new ArrayList<TileKey>();
+		for (int bins : new int[] {128, 1024}) {
+			for (int channel : new int[] {Signal.MIX, 0, 1}) {
+				for (int index = 0; index < 6; index++) {
+					keys.add(new TileKey(bins, 0.25, WindowFunction.RECTANGULAR,
+							index % 2 == 0, false, 64, index, channel));
+					keys.add(new TileKey(bins, 0.5, WindowFunction.BLACKMAN,
+							index % 2 == 1, index % 3 == 0, 256, index, channel));
+				}
+			}
+		}
+		final List<int[]> expected = new ArrayList<int[]>();
+		for (TileKey key : keys) {
+			expected.add(pixels(Spectrogram.renderTile(signal, key)));
+		}
+		// every thread renders every tile, each in its own order
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int t = 0; t < THREADS; t++) {
+			final long seed = t;
+			results.add(executor.submit(new Callable<Boolean>() {
+				public Boolean call() {
+					List<Integer> order = new ArrayList<Integer>();
+					for (int i = 0; i < keys.size(); i++) {
+						order.add(i);
+					}
+					Collections.shuffle(order, new Random(seed));
+					for (int i : order) {
+						int[] actual = pixels(Spectrogram.renderTile(signal,
+								keys.get(i)));
+						if (!Arrays.equals(expected.get(i), actual))
+							return false;
+					}
+					return true;
+				}
+			}));
+		}
+		for (Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+	}
+	
+	@Test
+	public void readsAfterCloseAreSilent() throws IOException {
+		// workers still running when a signal is replaced must neither fail
+		// nor report the closed files
+		PrintStream err = System.err;
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(log));
+		double[] out = new double[5000];
+		try {
+			signal.close();
+			for (int channel : new int[] {0, 1}) {
+				Arrays.fill(out, 1.0);
+				signal.readSamples(channel, LENGTH / 2, out.length, out, 0);
+				assertArrayEquals(new double[out.length], out, 0.0);
+			}
+		}
+		finally {
+			System.setErr(err);
+		}
+		assertEquals("", log.toString());
+	}
+	
+	private double[] spectrum(int bins, WindowFunction window) {
+		double[] out = new double[bins];
+		signal.readSpectrum(Signal.MIX, LENGTH / 2, bins, window, true,
+				new double[bins * 2], out);
+		return out;
+	}
+	
+	private int[] export(ForkJoinPool pool, int channel, int bins, int sw,
+			WindowFunction window) {
+		int columns = LENGTH / sw;
+		int[] pixels = new int[columns * bins];
+		try {
+			pool.invoke(new ColumnTask(signal, channel, bins, sw, window, false,
+					null, new Palette(bins), pixels, 0, columns, 0, 0, columns,
+					new AtomicInteger(), new AtomicBoolean()));
+		}
+		finally {
+			pool.shutdown();
+		}
+		return pixels;
+	}
+	
+	private static int[] pixels(BufferedImage image) {
+		return ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+	}
+	
+	private static File createPcm(Random random) throws IOException {
+		double[] samples = new double[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			samples[i] = 0.5 * Math.sin(i * 0.05) + 0.25 * random.nextGaussian();
+			samples[i] = Math.max(-1.0, Math.min(1.0, samples[i]));
+		}
+		ByteBuffer encoded = ByteBuffer.allocate(LENGTH * SampleFormat.SHORT.getWidth());
+		SampleFormat.SHORT.encode(samples, 0, LENGTH, encoded, 0);
+		File f = File.createTempFile("test", ".pcm");
+		f.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(f);
+		try {
+			out.write(encoded.array());
+		}
+		finally {
+			out.close();
+		}
+		return f;
+	}
+	
+	private static SampledData openMapped(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			return new SampledMappedData(raf.getChannel(), LENGTH, SampleFormat.SHORT);
+		}
+		finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.remyoukaour.spectrogram;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.sound.sampled.AudioFormat;
+import org.junit.*;
+
+public class PcmDecoderTest {
+	private static final double[] SAMPLES = {0.0, 0.5, -0.5, 0.25, -1.0,
+		0.999, 1.0 / 3};
+	
+	@Test
+	public void decodes24Bit() {
+		for (boolean bigEndian : new boolean[] {true, false}) {
+			ByteBuffer src = allocate(3, bigEndian);
+			for (int i = 0; i < SAMPLES.length; i++) {
+				int v = (int)Math.round(SAMPLES[i] * 8388608.0);
+				v = Math.min(v, 8388607);
+				byte hi = (byte)(v >> 16), mid = (byte)(v >> 8), lo = (byte)v;
+				src.put(bigEndian ? hi : lo).put(mid).put(bigEndian ? lo : hi);
+			}
+			PcmDecoder decoder = forFormat(AudioFormat.Encoding.PCM_SIGNED, 24,
+					bigEndian);
+			assertSame(PcmDecoder.SIGNED_24, decoder);
+			assertDecodes(decoder, src, 1.0 / 8388608);
+		}
+	}
+	
+	@Test
+	public void decodes32Bit() {
+		for (boolean bigEndian : new boolean[] {true, false}) {
+			ByteBuffer src = allocate(4, bigEndian);
+			for (double sample : SAMPLES) {
+				src.putInt((int)Math.max(Integer.MIN_VALUE,
+						Math.min(Integer.MAX_VALUE, Math.round(sample * 2147483648.0))));
+			}
+			PcmDecoder decoder = forFormat(AudioFormat.Encoding.PCM_SIGNED, 32,
+					bigEndian);
+			assertSame(PcmDecoder.SIGNED_32, decoder);
+			assertDecodes(decoder, src, 1.0 / 2147483648.0);
+		}
+	}
+	
+	@Test
+	public void decodesFloat() {
+		for (boolean bigEndian : new boolean[] {true, false}) {
+			ByteBuffer src = allocate(4, bigEndian);
+			for (double sample : SAMPLES) {
+				src.putFloat((float)sample);
+			}
+			PcmDecoder decoder = forFormat(AudioFormat.Encoding.PCM_FLOAT, 32,
+					bigEndian);
+			assertSame(PcmDecoder.FLOAT_32, decoder);
+			assertDecodes(decoder, src, 1e-7);
+			src = allocate(8, bigEndian);
+			for (double sample : SAMPLES) {
+				src.putDouble(sample);
+			}
+			decoder = forFormat(AudioFormat.Encoding.PCM_FLOAT, 64, bigEndian);
+			assertSame(PcmDecoder.FLOAT_64, decoder);
+			assertDecodes(decoder, src, 0.0);
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnsigned24Bit() {
+		forFormat(AudioFormat.Encoding.PCM_UNSIGNED, 24, false);
+	}
+	
+	private static ByteBuffer allocate(int width, boolean bigEndian) {
+		return ByteBuffer.allocate(SAMPLES.length * width).order(bigEndian ?
+				ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	private static PcmDecoder forFormat(AudioFormat.Encoding encoding, int bits,
+			boolean bigEndian) {
+		// stereo, so the width must come from one sample and not the frame
+		return PcmDecoder.forFormat(new AudioFormat(encoding, 44100, bits, 2,
+				bits / 8 * 2, 44100, bigEndian));
+	}
+	
+	private static void assertDecodes(PcmDecoder decoder, ByteBuffer src,
+			double delta) {
+		double[] decoded = new double[SAMPLES.length];
+		decoder.decode(src, SAMPLES.length, decoded);
+		assertArrayEquals(decoder.name(), SAMPLES, decoded, delta);
+		// the samples are stored as precisely as they were decoded
+		WritableSampledData stored = decoder.getSampleFormat().allocate(SAMPLES.length);
+		stored.set(0, decoded, 0, decoded.length);
+		double[] read = new double[SAMPLES.length];
+		stored.read(0, read.length, read, 0);
+		assertArrayEquals(decoder.name(), decoded, read, 0.0);
+	}
+}